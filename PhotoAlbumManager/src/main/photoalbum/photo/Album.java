@@ -1,34 +1,65 @@
 package photoalbum.photo;
 
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 // Represents an album having a set of photos.
 public class Album {
 
 	private Set<Photo> photos;
+	private Map<String, Photo> photosByName;
 	private String name;
+	private PhotoManager photoManager;     // manager this album was added to, or null
 
 	// EFFECTS: constructs an album with the given name, having no photos
 	public Album(String name) {
 		  this.name =  name;
         photos = new HashSet<Photo>();
+        photosByName = new HashMap<String, Photo>();
 	}
 
 	public String getName() {
 		return name;
 	}
 
+    // MODIFIES: this
+    // EFFECTS:  sets manager to notify when the photos of this album or their creation dates change
+    // NOTE:     should be called only by PhotoManager.addAlbum
+    void setPhotoManager(PhotoManager photoManager) {
+        this.photoManager = photoManager;
+    }
+
+    // EFFECTS: notifies this album's manager, if any, that the creation date of given photo of this album was
+    //          changed from given previous date (null if it had none)
+    // NOTE:    should be called only by Photo.setDateCreated
+    void photoDateChanged(Photo photo, Date previousDate) {
+        if (photoManager != null)
+            photoManager.photoDateChanged(photo, previousDate);
+    }
+
 	// MODIFIES: this
     // EFFECTS: adds photo to album, if album does not already contain it
 	public void addPhoto(Photo photo) {
 		if (!photos.contains(photo)) {
 			photos.add(photo);
+			if (!photosByName.containsKey(photo.getName()))
+				photosByName.put(photo.getName(), photo);
 			photo.setAlbum(this);
+			if (photoManager != null)
+				photoManager.photoAdded(photo);
 		}
 	}
 
+	// EFFECTS: returns photo in this album with the given name (photo names are assumed to be unique within
+    //          an album); returns null if no photo found with the given name
+	public Photo findPhoto(String name) {
+		return photosByName.get(name);
+	}
+
 	// EFFECTS: returns an unmodifiable set of photos in this album
 	public Set<Photo> getPhotos() {
 		return Collections.unmodifiableSet(photos);
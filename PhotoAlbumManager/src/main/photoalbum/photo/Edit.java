@@ -0,0 +1,196 @@
+package photoalbum.photo;
+
+import photoalbum.utility.BlurEngine;
+import photoalbum.utility.PixelKernels;
+
+// Represents an edit to the image of a photo; a photo records the edits made to it and replays them on the
+// unedited image to render the edited one
+public abstract class Edit {
+    private static final int DEFAULT_BLUR_RADIUS = 1;
+
+    private static final int LEVELS = 256;
+    private static final int MID_LEVEL = 128;
+
+    private static final PixelKernels KERNELS = PixelKernels.getDefault();
+
+    private String name;
+
+    // EFFECTS: constructs edit with given name
+    private Edit(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // EFFECTS: returns edit converting image to black and white, each pixel becoming the opaque gray whose level
+    //          is the average of its red, green and blue levels
+    public static Edit blackAndWhite() {
+        return new PixelEdit("Black & White") {
+            @Override
+            void apply(int[] pixels, int from, int to) {
+                KERNELS.blackAndWhite(pixels, from, to);
+            }
+        };
+    }
+
+    // REQUIRES: contrast >= 0
+    // EFFECTS: returns edit multiplying the distance of each red, green and blue level from mid-level by contrast,
+    //          then adding brightness to it (levels being clamped to 0..255); alpha is unchanged
+    public static Edit brightnessContrast(int brightness, double contrast) {
+        int[] table = new int[LEVELS];
+        for (int level = 0; level < LEVELS; level++)
+            table[level] = clampLevel((int) Math.round((level - MID_LEVEL) * contrast + MID_LEVEL + brightness));
+
+        return new LookupEdit("Brightness/Contrast", table, table, table);
+    }
+
+    // REQUIRES: matrix is a 3 x 3 matrix
+    // EFFECTS: returns edit replacing the red, green and blue levels of each pixel by the product of matrix with
+    //          them (levels being clamped to 0..255); e.g. row 0 of matrix gives the weights of the red, green and
+    //          blue levels in the new red level; alpha is unchanged
+    public static Edit channelMix(double[][] matrix) {
+        return new ChannelMixEdit("Channel Mix", matrix);
+    }
+
+    // EFFECTS: returns edit flipping image horizontally
+    public static Edit flipHorizontal() {
+        return new FlipEdit("Flip Horizontal", true);
+    }
+
+    // EFFECTS: returns edit flipping image vertically
+    public static Edit flipVertically() {
+        return new FlipEdit("Flip Vertically", false);
+    }
+
+    // EFFECTS: returns edit averaging each pixel with its immediate neighbours
+    public static Edit blur() {
+        return blur(DEFAULT_BLUR_RADIUS);
+    }
+
+    // REQUIRES: 0 <= radius <= BlurEngine.MAX_RADIUS
+    // EFFECTS: returns edit replacing each pixel by the average of the pixels within given radius of it
+    public static Edit blur(int radius) {
+        return new BlurEdit("Blur", radius, 0);
+    }
+
+    // REQUIRES: sigma >= 0
+    // EFFECTS: returns edit blurring image with a Gaussian of given standard deviation, in pixels
+    public static Edit gaussianBlur(double sigma) {
+        return new BlurEdit("Gaussian Blur", 0, sigma);
+    }
+
+    @Override
+    public String toString() {
+        return "Edit(" + name + ")";
+    }
+
+    // EFFECTS: returns given level clamped to the range of levels
+    private static int clampLevel(int level) {
+        return Math.max(0, Math.min(level, LEVELS - 1));
+    }
+
+    // An edit computing each pixel from the same pixel of the image alone; edits are applied to whole rows at
+    // a time by the pixel kernels chosen at startup, which are vectorized where the JVM supports it
+    abstract static class PixelEdit extends Edit {
+        PixelEdit(String name) {
+            super(name);
+        }
+
+        // MODIFIES: pixels
+        // EFFECTS:  applies edit to pixels[from, to), held as packed ARGB values (whose alpha may be undefined)
+        abstract void apply(int[] pixels, int from, int to);
+    }
+
+    // An edit mapping each of the red, green and blue levels of a pixel through a table; consecutive lookup edits
+    // are combined into one
+    static class LookupEdit extends PixelEdit {
+        private int[] red;
+        private int[] green;
+        private int[] blue;
+
+        LookupEdit(String name, int[] red, int[] green, int[] blue) {
+            super(name);
+            this.red = red;
+            this.green = green;
+            this.blue = blue;
+        }
+
+        // EFFECTS: returns lookup edit having the same effect as applying this edit, then next
+        LookupEdit then(LookupEdit next) {
+            int[] newRed = new int[LEVELS];
+            int[] newGreen = new int[LEVELS];
+            int[] newBlue = new int[LEVELS];
+            for (int level = 0; level < LEVELS; level++) {
+                newRed[level] = next.red[red[level]];
+                newGreen[level] = next.green[green[level]];
+                newBlue[level] = next.blue[blue[level]];
+            }
+            return new LookupEdit(getName() + ", " + next.getName(), newRed, newGreen, newBlue);
+        }
+
+        @Override
+        void apply(int[] pixels, int from, int to) {
+            KERNELS.lookup(pixels, from, to, red, green, blue);
+        }
+    }
+
+    // An edit computing the red, green and blue levels of a pixel as weighted sums of its levels; weights are
+    // held in fixed point, with PixelKernels.MIX_WEIGHT_ONE standing for 1
+    static class ChannelMixEdit extends PixelEdit {
+        private int[] weights;  // row by row
+
+        ChannelMixEdit(String name, double[][] matrix) {
+            super(name);
+            weights = new int[9];
+            for (int row = 0; row < 3; row++) {
+                for (int column = 0; column < 3; column++)
+                    weights[3 * row + column] = (int) Math.round(matrix[row][column] * PixelKernels.MIX_WEIGHT_ONE);
+            }
+        }
+
+        @Override
+        void apply(int[] pixels, int from, int to) {
+            KERNELS.channelMix(pixels, from, to, weights);
+        }
+    }
+
+    // An edit mirroring the image
+    static class FlipEdit extends Edit {
+        private boolean horizontal;
+
+        FlipEdit(String name, boolean horizontal) {
+            super(name);
+            this.horizontal = horizontal;
+        }
+
+        boolean isHorizontal() {
+            return horizontal;
+        }
+    }
+
+    // An edit computing each pixel from the pixels around it; the radius or standard deviation is given in pixels
+    // of the displayed image and is scaled when the edit is applied to an image of another resolution
+    static class BlurEdit extends Edit {
+        private int radius;
+        private double sigma;
+
+        BlurEdit(String name, int radius, double sigma) {
+            super(name);
+            this.radius = radius;
+            this.sigma = sigma;
+        }
+
+        // REQUIRES: pixels.length == width * height, scale > 0
+        // EFFECTS: returns new array holding given pixels blurred, with radius or standard deviation multiplied
+        //          by scale; the blurred pixels are opaque
+        int[] apply(int[] pixels, int width, int height, double scale) {
+            if (sigma > 0)
+                return BlurEngine.gaussianBlur(pixels, width, height, sigma * scale);
+
+            int scaledRadius = (int) Math.min(Math.round(radius * scale), BlurEngine.MAX_RADIUS);
+            return BlurEngine.boxBlur(pixels, width, height, scaledRadius);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package photoalbum.photo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Applies a list of edits to the pixels of an image. Runs of consecutive pixel edits and flips are fused into a
+// single pass over the image, which copies each row to its flipped position and applies the pixel edits to it in
+// order (the two commute); blurs need whole neighbourhoods, so each one ends a run.
+class EditPipeline {
+    private static final int ROWS_PER_CHECK = 64;     // rows edited between progress reports
+
+    // Monitor used when rendering is not followed
+    private static final RenderMonitor NO_MONITOR = new RenderMonitor() {
+        @Override
+        public void progress(double fraction) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    // REQUIRES: pixels.length == width * height, scale > 0
+    // EFFECTS: returns pixels, as packed ARGB values, of the image having given pixels once given edits are
+    //          applied to it in order; blur edits are scaled by given scale (the ratio of the image's resolution
+    //          to the displayed image's); given pixels are never modified, but are returned if the edits leave
+    //          them unchanged, so that they can be read from an image that is shared or still displayed
+    static int[] apply(int[] pixels, int width, int height, List<Edit> edits, double scale) {
+        return apply(pixels, width, height, edits, scale, NO_MONITOR);
+    }
+
+    // REQUIRES: pixels.length == width * height, scale > 0
+    // EFFECTS: as apply above, reporting progress to given monitor after each pass over the image and every
+    //          ROWS_PER_CHECK rows of a run; returns null if monitor asks for rendering to stop
+    static int[] apply(int[] pixels, int width, int height, List<Edit> edits, double scale,
+                       RenderMonitor monitor) {
+        List<Edit.PixelEdit> pixelEdits = new ArrayList<Edit.PixelEdit>();
+        boolean flipHorizontal = false;
+        boolean flipVertical = false;
+        Progress progress = new Progress(monitor, countPasses(edits));
+
+        for (Edit edit : edits) {
+            if (edit instanceof Edit.PixelEdit) {
+                pixelEdits.add((Edit.PixelEdit) edit);
+            } else if (edit instanceof Edit.FlipEdit) {
+                if (((Edit.FlipEdit) edit).isHorizontal())
+                    flipHorizontal = !flipHorizontal;
+                else
+                    flipVertical = !flipVertical;
+            } else {
+                pixels = applyRun(pixels, width, height, pixelEdits, flipHorizontal, flipVertical, progress);
+                if (pixels == null || monitor.isCancelled())
+                    return null;
+
+                pixels = ((Edit.BlurEdit) edit).apply(pixels, width, height, scale);
+                progress.passDone();
+                pixelEdits.clear();
+                flipHorizontal = false;
+                flipVertical = false;
+            }
+        }
+
+        pixels = applyRun(pixels, width, height, pixelEdits, flipHorizontal, flipVertical, progress);
+        if (pixels != null)
+            monitor.progress(1);
+        return pixels;
+    }
+
+    // EFFECTS: returns number of passes over the image needed to apply given edits: one per blur, and one per
+    //          run of other edits
+    private static int countPasses(List<Edit> edits) {
+        int passes = 0;
+        boolean isInRun = false;
+
+        for (Edit edit : edits) {
+            if (edit instanceof Edit.BlurEdit) {
+                passes += isInRun ? 2 : 1;
+                isInRun = false;
+            } else {
+                isInRun = true;
+            }
+        }
+
+        return isInRun ? passes + 1 : passes;
+    }
+
+    // EFFECTS: returns pixels once given pixel edits and flips are applied to them in a single pass;
+    //          returns given pixels, unchanged, if there is nothing to apply; returns null if rendering is
+    //          cancelled
+    private static int[] applyRun(int[] pixels, int width, int height, List<Edit.PixelEdit> pixelEdits,
+                                  boolean flipHorizontal, boolean flipVertical, Progress progress) {
+        if (pixelEdits.isEmpty() && !flipHorizontal && !flipVertical)
+            return pixels;
+
+        List<Edit.PixelEdit> edits = combineLookups(pixelEdits);
+        int[] result = new int[pixels.length];
+
+        // Each row is copied to its flipped position, then edited while it is still in the processor's cache
+        for (int y = 0; y < height; y++) {
+            int sourceRow = (flipVertical ? height - 1 - y : y) * width;
+            int destRow = y * width;
+
+            if (flipHorizontal) {
+                for (int x = 0; x < width; x++)
+                    result[destRow + x] = pixels[sourceRow + width - 1 - x];
+            } else {
+                System.arraycopy(pixels, sourceRow, result, destRow, width);
+            }
+
+            for (Edit.PixelEdit edit : edits)
+                edit.apply(result, destRow, destRow + width);
+
+            if ((y + 1) % ROWS_PER_CHECK == 0 && !progress.rowsDone(y + 1, height))
+                return null;
+        }
+
+        progress.passDone();
+        return result;
+    }
+
+    // EFFECTS: returns given pixel edits, with each run of consecutive lookup edits combined into one
+    private static List<Edit.PixelEdit> combineLookups(List<Edit.PixelEdit> pixelEdits) {
+        List<Edit.PixelEdit> combined = new ArrayList<Edit.PixelEdit>();
+
+        for (Edit.PixelEdit edit : pixelEdits) {
+            int last = combined.size() - 1;
+            if (edit instanceof Edit.LookupEdit && last >= 0 && combined.get(last) instanceof Edit.LookupEdit)
+                combined.set(last, ((Edit.LookupEdit) combined.get(last)).then((Edit.LookupEdit) edit));
+            else
+                combined.add(edit);
+        }
+
+        return combined;
+    }
+
+    // Reports progress through the passes of a rendering to its monitor
+    private static class Progress {
+        private RenderMonitor monitor;
+        private int passes;
+        private int passesDone;
+
+        Progress(RenderMonitor monitor, int passes) {
+            this.monitor = monitor;
+            this.passes = Math.max(passes, 1);
+        }
+
+        // EFFECTS: reports given number of rows of current pass done, out of given number of rows;
+        //          returns false if rendering is cancelled
+        boolean rowsDone(int rows, int height) {
+            monitor.progress((passesDone + (double) rows / height) / passes);
+            return !monitor.isCancelled();
+        }
+
+        // MODIFIES: this
+        // EFFECTS:  reports current pass done
+        void passDone() {
+            passesDone++;
+            monitor.progress((double) passesDone / passes);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package photoalbum.photo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Prefetches the images of the photos on either side of the photo being displayed on a low-priority background
+// thread, so that they are already decoded when they are displayed. Only the unedited images are loaded, into the
+// shared image cache: rendering edits would hold a photo's lock, so it is left to the photo panel, which renders
+// them in the background once the photo is displayed. Each request replaces the photos still waiting to be
+// prefetched, so work for a photo no longer near the displayed one is dropped.
+public class ImagePrefetcher {
+    private static final int DEFAULT_DISTANCE =
+            Integer.parseInt(System.getProperty("photoalbum.prefetchDistance", "3"));
+
+    private ExecutorService executor;
+    private int distance;
+    private Deque<Photo> pending;       // photos waiting to be prefetched, next first
+    private boolean isWorkerActive;
+
+    // EFFECTS: constructs prefetcher of the photos within the default distance of the displayed photo
+    public ImagePrefetcher() {
+        this(DEFAULT_DISTANCE);
+    }
+
+    // REQUIRES: distance >= 0
+    // EFFECTS: constructs prefetcher of the photos within given distance of the displayed photo
+    public ImagePrefetcher(int distance) {
+        this.distance = distance;
+        pending = new ArrayDeque<Photo>();
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Image prefetcher");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    // REQUIRES: 0 <= index < photos.size()
+    // MODIFIES: this
+    // EFFECTS:  requests images of the photos within distance of the one at given index in photos (in display
+    //           order), nearest first and, at equal distance, the next one before the previous one; cancels the
+    //           requests for other photos not yet being prefetched
+    public synchronized void prefetchAround(List<Photo> photos, int index) {
+        pending.clear();
+        for (int d = 1; d <= distance; d++) {
+            if (index + d < photos.size())
+                pending.add(photos.get(index + d));
+            if (index - d >= 0)
+                pending.add(photos.get(index - d));
+        }
+
+        if (!isWorkerActive && !pending.isEmpty()) {
+            isWorkerActive = true;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    prefetchPending();
+                }
+            });
+        }
+    }
+
+    // EFFECTS: returns photos waiting to be prefetched, next first
+    public synchronized List<Photo> getPending() {
+        return new ArrayList<Photo>(pending);
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  cancels all requests and stops the prefetcher thread once the image being prefetched is loaded
+    public void shutdown() {
+        synchronized (this) {
+            pending.clear();
+        }
+        executor.shutdown();
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  prefetches the images of pending photos, one at a time, until none are left
+    private void prefetchPending() {
+        while (true) {
+            Photo photo;
+            synchronized (this) {
+                photo = pending.poll();
+                if (photo == null) {
+                    isWorkerActive = false;
+                    return;
+                }
+            }
+
+            try {
+                photo.prefetchUneditedImage();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -1,16 +1,32 @@
 package photoalbum.photo;
 
+import photoalbum.utility.ExifThumbnailReader;
+import photoalbum.utility.ImageCache;
+import photoalbum.utility.ImagePixels;
+import photoalbum.utility.ImageResizer;
 import photoalbum.utility.Thumbnail;
+import photoalbum.utility.TileHistory;
+import photoalbum.utility.ThumbnailCache;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 // Represents a photo having a name, a creation date, an album and a set of tags.
@@ -18,22 +34,62 @@ public class Photo {
     public static final int MAX_WIDTH = 600;
     public static final int MAX_HEIGHT = 400;
 
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+    private static final long HISTORY_BUDGET_MEGABYTES =
+            Long.parseLong(System.getProperty("photoalbum.undoHistoryMB", "16"));
+
+    // Undo memory shared by all photos, so that edits to many photos cannot take more than the budget between them
+    private static final TileHistory.Budget HISTORY_BUDGET =
+            new TileHistory.Budget(HISTORY_BUDGET_MEGABYTES * BYTES_PER_MEGABYTE);
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    // Loads images into the shared image cache when they are not cached
+    private static final ImageCache.ImageLoader IMAGE_LOADER = new ImageCache.ImageLoader() {
+        @Override
+        public BufferedImage load(File file) {
+            return readImage(file);
+        }
+    };
+
+	private final int id;
 	private Album album;
 	private Set<Tag> tags;
 	private String name;
 	private Date dateCreated;
 	private String description;
+	private volatile boolean isDirty;   // true if description or tags changed since metadata was loaded or saved
 	
-	private BufferedImage image;
-	private Thumbnail thumbnail;
+	private File file;
+	private BufferedImage baseImage;    // non-null only if image was set directly; otherwise held by ImageCache
+	private volatile Thumbnail thumbnail;  // read without locking by peekThumbnailImage
+	private boolean isThumbnailStale;      // true if edits changed since thumbnail was computed
+
+	private List<Edit> edits;           // edits made to the image, in order
+	private List<Edit> undoneEdits;     // edits undone, most recently undone last
+	private BufferedImage editedImage;  // image with the first renderedEdits edits applied, or null
+	private int renderedEdits;
+	private TileHistory history;        // tiles changed by each of the last rendered edits, rendered one at a time;
+	                                    // null until an edit is first rendered on its own
+	private long editVersion;           // advanced whenever the list of edits changes
 
 	// EFFECTS: constructs a photo with the given name, having no tags; creation date, description and album are null.
 	public Photo(String name) {
+		id = nextId.getAndIncrement();
 		this.name = name;
         tags = new HashSet<Tag>();
         dateCreated = null;
         description = null;
         album = null;
+        edits = new ArrayList<Edit>();
+        undoneEdits = new ArrayList<Edit>();
+        history = null;
+	}
+
+	// EFFECTS: returns id of this photo; ids are distinct and assigned consecutively from 0 as photos are constructed,
+	//          so that sets of photos can be held as compressed bitmaps of their ids
+	public int getId() {
+		return id;
 	}
 
 	public String getName() {
@@ -52,25 +108,311 @@ public class Photo {
 		return dateCreated;
 	}
 
+    // MODIFIES: this
+    // EFFECTS:  sets creation date, which is then indexed by the manager of the photo's album, if any
 	public void setDateCreated(Date dateCreated) {
+		Date previousDate = this.dateCreated;
 		this.dateCreated = dateCreated;
+		if (album != null)
+            album.photoDateChanged(this, previousDate);
 	}
 
 	public String getDescription() {
 		return description;
 	}
 
+    // MODIFIES: this
+    // EFFECTS:  sets description; marks this photo dirty if description changes
 	public void setDescription(String description) {
+		if (description == null ? this.description != null : !description.equals(this.description))
+			isDirty = true;
 		this.description = description;
 	}
 
-    public BufferedImage getImage()  {
-        return image;
+    // EFFECTS: returns true if description or tags of this photo changed since it was last marked clean
+    public boolean isDirty() {
+        return isDirty;
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  marks this photo clean, i.e. its metadata matches that in its file
+    public void markClean() {
+        isDirty = false;
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  marks this photo dirty, e.g. because one of its tags was renamed
+    // NOTE:     should be called only by TagManager
+    void markDirty() {
+        isDirty = true;
+    }
+
+    // EFFECTS: returns image with all edits applied; edits not yet rendered are applied first, in a single pass
+    //          per run of edits not separated by a blur, into a new image that then replaces the edited image
+    //          (the pixels of the previous image are read, not copied);
+    //          when a single edit is rendered, the tiles it changes are recorded in the undo history;
+    //          returns null if image cannot be loaded
+    public synchronized BufferedImage getImage()  {
+        if (edits.isEmpty())
+            return getUneditedImage();
+
+        if (renderedEdits < edits.size()) {
+            BufferedImage source = editedImage == null ? getUneditedImage() : editedImage;
+            if (source == null)
+                return null;
+
+            List<Edit> pendingEdits = edits.subList(renderedEdits, edits.size());
+            int width = source.getWidth();
+            int height = source.getHeight();
+
+            int[] pixels = ImagePixels.getPixels(source);
+            int[] edited = EditPipeline.apply(pixels, width, height, pendingEdits, 1);
+
+            // Edits rendered together cannot be undone one by one from the history
+            if (pendingEdits.size() == 1)
+                recordInHistory(pixels, edited, width, height);
+            else
+                clearHistory();
+
+            editedImage = createEditedImage(source, pixels, edited);
+            renderedEdits = edits.size();
+        }
+
+        return editedImage;
     }
 
-    // EFFECTS: returns thumbnail's image
+    // EFFECTS: renders the edits not yet rendered, and the thumbnail if edits changed since it was computed,
+    //          reporting progress to monitor; this photo's lock is not held while the pixels are processed, so
+    //          the photo can be used in the meantime. The new edited image and thumbnail are then published
+    //          together, unless the edits were changed in the meantime. Returns the image with all edits applied,
+    //          or null if rendering was cancelled, the edits were changed or the image cannot be loaded.
+    public BufferedImage renderEdits(RenderMonitor monitor) {
+        long version;
+        int renderedBefore;
+        BufferedImage source;
+        List<Edit> pendingEdits;
+
+        synchronized (this) {
+            if (renderedEdits == edits.size() && !isThumbnailStale && thumbnail != null)
+                return getImage();
+
+            version = editVersion;
+            renderedBefore = renderedEdits;
+            source = edits.isEmpty() || editedImage == null ? getUneditedImage() : editedImage;
+            if (source == null)
+                return null;
+
+            pendingEdits = new ArrayList<Edit>(edits.subList(renderedEdits, edits.size()));
+        }
+
+        // The source is read without being copied: undo and redo change the edited image in place, but they also
+        // change the edit version, so that whatever is rendered from it in the meantime is discarded
+        BufferedImage rendered = source;
+        int width = rendered.getWidth();
+        int height = rendered.getHeight();
+        int[] pixels = null;
+        int[] edited = null;
+
+        if (!pendingEdits.isEmpty()) {
+            pixels = ImagePixels.getPixels(source);
+            edited = EditPipeline.apply(pixels, width, height, pendingEdits, 1, monitor);
+            if (edited == null)
+                return null;
+
+            rendered = createEditedImage(source, pixels, edited);
+        }
+
+        if (monitor.isCancelled())
+            return null;
+        Thumbnail renderedThumbnail = new Thumbnail(rendered);
+
+        synchronized (this) {
+            if (editVersion != version)
+                return null;
+
+            // Unless the edits were rendered by another thread in the meantime
+            if (!pendingEdits.isEmpty() && renderedEdits == renderedBefore) {
+                if (pendingEdits.size() == 1)
+                    recordInHistory(pixels, edited, width, height);
+                else
+                    clearHistory();
+
+                editedImage = rendered;
+                renderedEdits = edits.size();
+            }
+
+            thumbnail = renderedThumbnail;
+            isThumbnailStale = false;
+            return edits.isEmpty() ? rendered : editedImage;
+        }
+    }
+
+    // EFFECTS: returns image like given source image holding given edited pixels, rendered from given pixels of
+    //          the source; the edited pixels are used as they are, unless the edits left the source's pixels
+    //          unchanged, in which case they are copied so that the two images do not share pixels
+    private static BufferedImage createEditedImage(BufferedImage source, int[] pixels, int[] edited) {
+        if (edited == pixels)
+            edited = pixels.clone();
+        return ImagePixels.createCompatibleImage(source, edited);
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  records the tiles changed by an edit from before to after in the undo history, creating the
+    //           history if this is the first edit rendered on its own
+    private void recordInHistory(int[] before, int[] after, int width, int height) {
+        if (history == null)
+            history = new TileHistory(HISTORY_BUDGET);
+        history.record(before, after, width, height);
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  discards all steps of the undo history, if there is one
+    private void clearHistory() {
+        if (history != null)
+            history.clear();
+    }
+
+    // EFFECTS: returns image before any edits; unless it was set directly, it is taken from the shared image cache,
+    //          which loads it from file if it is not cached; returns null if image cannot be loaded
+    private BufferedImage getUneditedImage() {
+        if (baseImage != null || file == null)
+            return baseImage;
+
+        return ImageCache.getSharedCache().get(file, IMAGE_LOADER);
+    }
+
+    // EFFECTS: loads the image before any edits into the shared image cache, if it is read from file and is not
+    //          cached; edits are left to be rendered when the image is requested, so this photo's lock is only held
+    //          to look up its file
+    public void prefetchUneditedImage() {
+        File source;
+        synchronized (this) {
+            if (baseImage != null || file == null)
+                return;
+            source = file;
+        }
+
+        ImageCache.getSharedCache().get(source, IMAGE_LOADER);
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  replaces photo's image with given image, which is kept with this photo from now on,
+    //           and discards all edits; thumbnail is recomputed from the new image on next access
+    public synchronized void setImage(BufferedImage image) {
+        if (file != null)
+            ImageCache.getSharedCache().remove(file);
+
+        baseImage = image;
+        thumbnail = null;
+        clearEdits();
+    }
+
+    // EFFECTS: returns image read from file at its full resolution, with all edits applied (blurs being scaled to
+    //          the resolution of the file); if image was set directly or photo has no file, returns a copy of the
+    //          image with all edits applied; returns null if image cannot be read. This photo's lock is only held
+    //          while the edits are copied, so the file is decoded and edited while the photo can be used.
+    public BufferedImage renderFullResolution() {
+        File source;
+        BufferedImage image;
+        List<Edit> currentEdits;
+
+        synchronized (this) {
+            source = file;
+            image = baseImage;
+            currentEdits = new ArrayList<Edit>(edits);
+        }
+
+        if (image != null) {
+            image = copyOf(image);
+            applyEdits(image, currentEdits, 1);
+            return image;
+        }
+        if (source == null)
+            return null;
+
+        try {
+            BufferedImage fullImage = ImageIO.read(source);
+            if (fullImage == null)
+                return null;
+
+            Dimension displaySize = getScaledSize(fullImage.getWidth(), fullImage.getHeight());
+            applyEdits(fullImage, currentEdits, (double) fullImage.getWidth() / displaySize.width);
+            return fullImage;
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    // EFFECTS: returns thumbnail's image; if photo was loaded lazily, thumbnail is first taken from the
+    //          shared thumbnail cache, then from the preview embedded in the file's EXIF metadata or, failing that,
+    //          computed from the full image; returns null if image cannot be loaded. This photo's lock is not held
+    //          while the thumbnail of an unedited file is loaded, so the photo can be used in the meantime.
     public Image getThumbnailImage()  {
-        return thumbnail.getThumbnailImage();
+        File source;
+        long version;
+
+        synchronized (this) {
+            if (!isThumbnailStale && thumbnail != null)
+                return thumbnail.getThumbnailImage();
+
+            if (baseImage != null || !edits.isEmpty() || file == null) {
+                BufferedImage fullImage = getImage();
+                if (fullImage == null)
+                    return null;
+
+                thumbnail = new Thumbnail(fullImage);
+                isThumbnailStale = false;
+                return thumbnail.getThumbnailImage();
+            }
+
+            source = file;
+            version = editVersion;
+        }
+
+        Thumbnail loaded = loadUneditedThumbnail(source);
+        if (loaded == null)
+            return null;
+
+        synchronized (this) {
+            // Unless the photo was edited or given another image in the meantime
+            if (editVersion != version)
+                return getThumbnailImage();
+
+            thumbnail = loaded;
+            isThumbnailStale = false;
+            return loaded.getThumbnailImage();
+        }
+    }
+
+    // EFFECTS: returns thumbnail of the image in given file, taken from the shared thumbnail cache, then from the
+    //          preview embedded in the file's EXIF metadata or, failing that, computed from the full image, and
+    //          stores it in the thumbnail cache; returns null if image cannot be loaded
+    private static Thumbnail loadUneditedThumbnail(File source) {
+        Thumbnail loaded = ThumbnailCache.getSharedCache().getThumbnail(source);
+        if (loaded != null)
+            return loaded;
+
+        loaded = ExifThumbnailReader.readThumbnail(source);
+        if (loaded == null) {
+            BufferedImage fullImage = ImageCache.getSharedCache().getIfPresent(source);
+            if (fullImage == null)
+                fullImage = readImage(source);
+            if (fullImage == null)
+                return null;
+
+            loaded = new Thumbnail(fullImage);
+        }
+
+        ThumbnailCache.getSharedCache().putThumbnail(source, loaded);
+        return loaded;
+    }
+
+    // EFFECTS: returns thumbnail image of this photo if it is already available, otherwise null; unlike
+    //          getThumbnailImage, never loads the thumbnail nor waits for threads using this photo, so can be
+    //          called on the event thread
+    public Image peekThumbnailImage() {
+        Thumbnail current = thumbnail;
+        return current == null ? null : current.getThumbnailImage();
     }
 
     // EFFECTS: returns an unmodifiable set of this photo's tags
@@ -81,55 +423,230 @@ public class Photo {
     // MODIFIES: this
     // EFFECTS: loads photo from file, scaling it to fit within a rectangle of size MAX_WIDTH X MAX_HEIGHT;
     //          returns true if operation is successful, false otherwise.
-    public boolean loadPhoto(File file) {
-        try {
-            image = ImageIO.read(file);
+    public synchronized boolean loadPhoto(File file) {
+        BufferedImage loaded = readImage(file);
 
-            if (image == null)
-                return false;
+        if (loaded == null)
+            return false;
 
-            scaleImage();
+        this.file = file;
+        baseImage = null;
+        clearEdits();
+        ImageCache.getSharedCache().put(file, loaded);
+        thumbnail = new Thumbnail(loaded);
+        ThumbnailCache.getSharedCache().putThumbnail(file, thumbnail);
+        return true;
+    }
 
-            thumbnail = new Thumbnail(image);
-        } catch (IOException ioe) {
+    // MODIFIES: this
+    // EFFECTS: loads photo from given contents of given file, without reading the file again, scaling it to fit
+    //          within a rectangle of size MAX_WIDTH X MAX_HEIGHT; returns true if operation is successful,
+    //          false otherwise.
+    public synchronized boolean loadPhoto(File file, byte[] contents) {
+        BufferedImage loaded = readImage(contents);
+
+        if (loaded == null)
             return false;
-        }
 
+        this.file = file;
+        baseImage = null;
+        clearEdits();
+        ImageCache.getSharedCache().put(file, loaded);
+        thumbnail = new Thumbnail(loaded);
+        ThumbnailCache.getSharedCache().putThumbnail(file, thumbnail);
         return true;
     }
 
     // MODIFIES: this
-    // EFFECTS: scales image so that it fits within rectangle of size MAX_WIDTH x MAX_HEIGHT
-    private void scaleImage() {
-        Image scaled = null;
-        double imageRatio = (double) image.getWidth() / image.getHeight();
-        double windowRatio = (double) MAX_WIDTH / MAX_HEIGHT;
+    // EFFECTS: associates photo with given file without decoding the image; image and thumbnail are
+    //          loaded from file on first access. Returns true if file holds an image in a readable format,
+    //          false otherwise.
+    public synchronized boolean loadPhotoLazily(File file) {
+        if (!isReadableImage(file))
+            return false;
+
+        this.file = file;
+        baseImage = null;
+        thumbnail = null;
+        clearEdits();
+        return true;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: associates photo with given file without reading the file, given the start of the file (e.g. as
+    //          read by JpgIptcRecordReader.readHeader); image and thumbnail are loaded from file on first access.
+    //          Returns true if the start of the file holds the header of an image in a readable format, false
+    //          otherwise.
+    public synchronized boolean loadPhotoLazily(File file, byte[] header) {
+        if (!isReadableImage(header))
+            return false;
+
+        this.file = file;
+        baseImage = null;
+        thumbnail = null;
+        clearEdits();
+        return true;
+    }
+
+    // EFFECTS: returns true if an image reader is available for the given file and it can read the image
+    //          dimensions from the file's header, false otherwise
+    private static boolean isReadableImage(File file) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            return isReadableImage(in);
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    // EFFECTS: returns true if an image reader is available for the image whose file starts with given header
+    //          and it can read the image dimensions from the header, false otherwise
+    private static boolean isReadableImage(byte[] header) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(header))) {
+            return isReadableImage(in);
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
 
-        if (image.getWidth() > MAX_WIDTH && image.getHeight() > MAX_HEIGHT
-                && imageRatio > windowRatio)
-            scaled = image.getScaledInstance(MAX_WIDTH, -1, Image.SCALE_DEFAULT);
-        else if (image.getWidth() > MAX_WIDTH && image.getHeight() > MAX_HEIGHT)
-            scaled = image.getScaledInstance(-1, MAX_HEIGHT, Image.SCALE_DEFAULT);
-        else if (image.getWidth() > MAX_WIDTH)
-            scaled = image.getScaledInstance(MAX_WIDTH, -1, Image.SCALE_DEFAULT);
-        else if (image.getHeight() > MAX_HEIGHT)
-            scaled = image.getScaledInstance(-1, MAX_HEIGHT, Image.SCALE_DEFAULT);
+    // EFFECTS: returns true if an image reader is available for the image in given stream and it can read the
+    //          image dimensions, false otherwise
+    private static boolean isReadableImage(ImageInputStream in) {
+        try {
+            ImageReader reader = getImageReader(in);
+            if (reader == null)
+                return false;
+
+            try {
+                return reader.getWidth(0) > 0 && reader.getHeight(0) > 0;
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
 
-        if (scaled != null) {
-            image = new BufferedImage(scaled.getWidth(null), scaled.getHeight(null),
-                    BufferedImage.TYPE_INT_RGB);
+    // EFFECTS: returns image read from given file, scaled to fit within rectangle of size MAX_WIDTH X MAX_HEIGHT;
+    //          returns null if file is null or image cannot be read
+    private static BufferedImage readImage(File file) {
+        if (file == null)
+            return null;
 
-            Graphics g = image.createGraphics();
-            g.drawImage(scaled, 0, 0, null);
-            g.dispose();
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            return decodeImage(in);
+        } catch (IOException ioe) {
+            return null;
         }
     }
 
+    // EFFECTS: returns image decoded from given contents of an image file, scaled to fit within rectangle of size
+    //          MAX_WIDTH X MAX_HEIGHT; returns null if image cannot be decoded
+    private static BufferedImage readImage(byte[] contents) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(contents))) {
+            return decodeImage(in);
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    // EFFECTS: returns image decoded from given stream, scaled to fit within rectangle of size MAX_WIDTH X MAX_HEIGHT;
+    //          if the image is at least twice as large as needed, the decoder only reads every n-th pixel in each
+    //          direction (source subsampling), so that it produces roughly the display size directly;
+    //          returns null if stream holds no image in a readable format
+    private static BufferedImage decodeImage(ImageInputStream in) throws IOException {
+        ImageReader reader = getImageReader(in);
+        if (reader == null)
+            return null;
+
+        try {
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            Dimension scaledSize = getScaledSize(width, height);
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            int subsampling = getSourceSubsampling(width, height);
+            if (subsampling > 1)
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+            return scaleImage(reader.read(0, param), scaledSize.width, scaledSize.height);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    // REQUIRES: width > 0 and height > 0
+    // EFFECTS: returns n such that an image of given width and height is decoded reading every n-th pixel in each
+    //          direction, the largest n for which the decoded image is still at least as large as the image
+    //          scaled to fit within rectangle of size MAX_WIDTH X MAX_HEIGHT; 1 if no pixels can be skipped
+    public static int getSourceSubsampling(int width, int height) {
+        Dimension scaledSize = getScaledSize(width, height);
+        return Math.max(1, Math.min(width / scaledSize.width, height / scaledSize.height));
+    }
+
+    // EFFECTS: returns a reader for the image in given stream, with its input set to the stream;
+    //          returns null if stream is null or no reader is available for its format
+    private static ImageReader getImageReader(ImageInputStream in) {
+        if (in == null)
+            return null;
+
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext())
+            return null;
+
+        ImageReader reader = readers.next();
+        reader.setInput(in, true, true);
+        return reader;
+    }
+
+    // EFFECTS: returns size of an image of given width and height once scaled to fit within rectangle of size
+    //          MAX_WIDTH x MAX_HEIGHT, keeping its aspect ratio
+    private static Dimension getScaledSize(int width, int height) {
+        double imageRatio = (double) width / height;
+        double windowRatio = (double) MAX_WIDTH / MAX_HEIGHT;
+
+        if (width > MAX_WIDTH && height > MAX_HEIGHT && imageRatio > windowRatio)
+            return new Dimension(MAX_WIDTH, Math.max(1, height * MAX_WIDTH / width));
+        else if (width > MAX_WIDTH && height > MAX_HEIGHT)
+            return new Dimension(Math.max(1, width * MAX_HEIGHT / height), MAX_HEIGHT);
+        else if (width > MAX_WIDTH)
+            return new Dimension(MAX_WIDTH, Math.max(1, height * MAX_WIDTH / width));
+        else if (height > MAX_HEIGHT)
+            return new Dimension(Math.max(1, width * MAX_HEIGHT / height), MAX_HEIGHT);
+
+        return new Dimension(width, height);
+    }
+
+    // EFFECTS: returns image resized to given width and height, or image itself if it already has that size
+    private static BufferedImage scaleImage(BufferedImage image, int width, int height) {
+        if (image.getWidth() == width && image.getHeight() == height)
+            return image;
+
+        return ImageResizer.resize(image, width, height);
+    }
+
+    // EFFECTS: returns a copy of given image, having the same colour model
+    private static BufferedImage copyOf(BufferedImage image) {
+        ColorModel colorModel = image.getColorModel();
+        WritableRaster raster = image.copyData(image.getRaster().createCompatibleWritableRaster());
+        return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+    }
+
+    // MODIFIES: image
+    // EFFECTS:  applies given edits to given image, scaling blurs by given scale
+    private static void applyEdits(BufferedImage image, List<Edit> edits, double scale) {
+        int[] pixels = ImagePixels.getPixels(image);
+        int[] edited = EditPipeline.apply(pixels, image.getWidth(), image.getHeight(), edits, scale);
+        if (edited != pixels)
+            System.arraycopy(edited, 0, pixels, 0, pixels.length);
+        ImagePixels.setPixels(image, pixels);
+    }
+
     // MODIFIES: this
     // EFFECTS:  adds tag to this photo, if photo does not already have it
 	public void addTag(Tag tag) {
 		if(!tags.contains(tag)){
 			tags.add(tag);
+			isDirty = true;
 			tag.addToPhoto(this);
 		}		
 	}
@@ -139,109 +656,147 @@ public class Photo {
 	public void removeTag(Tag tag) {
 		if(tags.contains(tag)){
 			tags.remove(tag);
+			isDirty = true;
 			tag.removeFromPhoto(this);
 		}		
 	}
 
     // MODIFIES: this
-    // EFFECTS: converts image to black and white
-    public void toBlackAndWhite() {
-        for (int x = 0; x < image.getWidth(); x++) {
-            for (int y = 0; y < image.getHeight(); y++) {
-                int rgb = image.getRGB(x, y);
-                image.setRGB(x, y, rgbToGray(rgb));
-            }
-        }
+    // EFFECTS:  records given edit; it is applied to the image when the image is next requested.
+    //           Edits previously undone can no longer be redone.
+    public synchronized void applyEdit(Edit edit) {
+        edits.add(edit);
+        undoneEdits.clear();
+        if (history != null)
+            history.clearRedo();
+        editsChanged();
     }
 
-    // EFFECTS: returns gray scale equivalent of given RGB colour
-    private int rgbToGray(int rgb) {
-        Color c = new Color(rgb);
-        int red = c.getRed();
-        int blue = c.getBlue();
-        int green = c.getGreen();
-        int average = (red + blue + green) / 3;
-        Color greyColor = new Color(average, average, average);
-        return greyColor.getRGB();
+    // EFFECTS: returns edits made to the image, in order
+    public synchronized List<Edit> getEdits() {
+        return Collections.unmodifiableList(new ArrayList<Edit>(edits));
     }
 
-    // MODIFIES: this
-    // EFFECTS: flips the image horizontally
-    public void flipHorizontal() {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int tempColor;
+    public synchronized boolean canUndo() {
+        return !edits.isEmpty();
+    }
 
-        for (int x = 0; x < width / 2; x++) {
-            for (int y = 0; y < height; y++) {
-                tempColor = image.getRGB(width - 1 - x, y);
-                image.setRGB(width - 1 - x, y, image.getRGB(x, y));
-                image.setRGB(x, y, tempColor);
+    public synchronized boolean canRedo() {
+        return !undoneEdits.isEmpty();
+    }
 
-            }
-        }
+    // EFFECTS: returns true if some edits have not been rendered yet, so that getImage would render them
+    public synchronized boolean hasUnrenderedEdits() {
+        return renderedEdits < edits.size();
     }
 
-    // MODIFIES: this
-    // EFFECTS: blurs the image
-    public void blur() {
-        BufferedImage temp = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+    // EFFECTS: returns true if edits changed since the thumbnail was computed
+    public synchronized boolean isThumbnailStale() {
+        return isThumbnailStale;
+    }
 
-        for (int x = 0; x < image.getWidth(); x++) {
-            for (int y = 0; y < image.getHeight(); y++) {
-                int rgb = getBlurredColourAt(x, y);
-                temp.setRGB(x, y, rgb);
-            }
+    // MODIFIES: this
+    // EFFECTS:  undoes last edit, if any; if it has been rendered, the tiles it changed are restored from the undo
+    //           history or, if it is no longer in the history, the image is rendered again from the unedited
+    //           image when next requested
+    public synchronized void undo() {
+        if (edits.isEmpty())
+            return;
+
+        undoneEdits.add(edits.remove(edits.size() - 1));
+        editsChanged();
+        if (renderedEdits <= edits.size())
+            return;
+
+        int[] pixels = editedImage == null || history == null ? null : ImagePixels.getPixels(editedImage);
+        if (pixels != null && history.undo(pixels)) {
+            ImagePixels.setPixels(editedImage, pixels);
+            renderedEdits--;
+        } else {
+            editedImage = null;
+            renderedEdits = 0;
+            clearHistory();
         }
+    }
 
-        Graphics g = image.createGraphics();
-        g.drawImage(temp, 0, 0, null);
-        g.dispose();
-    }
-
-    // EFFECTS: gets colour of blurred pixel at (x, y) in image
-    private int getBlurredColourAt(int x, int y) {
-        final int SPREAD = 1;
-        int redSum = 0;
-        int greenSum = 0;
-        int blueSum = 0;
-        int count = 0;
-
-        for (int dx = -SPREAD; dx <= SPREAD; dx++) {
-            for (int dy = -SPREAD; dy <= SPREAD; dy++) {
-                if (isInBounds(x + dx, y + dy)) {
-                    Color rgb = new Color(image.getRGB(x + dx, y + dy));
-                    redSum += rgb.getRed();
-                    blueSum += rgb.getBlue();
-                    greenSum += rgb.getGreen();
-                    count++;
-                }
-            }
+    // MODIFIES: this
+    // EFFECTS:  redoes last undone edit, if any; if it was undone from the undo history, its tiles are restored
+    //           from the history, otherwise it is rendered when the image is next requested
+    public synchronized void redo() {
+        if (undoneEdits.isEmpty())
+            return;
+
+        edits.add(undoneEdits.remove(undoneEdits.size() - 1));
+        editsChanged();
+
+        if (history == null)
+            return;
+
+        int[] pixels = editedImage == null || renderedEdits != edits.size() - 1 ? null
+                : ImagePixels.getPixels(editedImage);
+        if (pixels != null && history.redo(pixels)) {
+            ImagePixels.setPixels(editedImage, pixels);
+            renderedEdits++;
+        } else {
+            history.clearRedo();
         }
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  discards all edits and the history of undone edits; thumbnail is left to be set by caller
+    private void clearEdits() {
+        edits.clear();
+        undoneEdits.clear();
+        editedImage = null;
+        renderedEdits = 0;
+        clearHistory();
+        editVersion++;
+        isThumbnailStale = false;
+    }
 
-        return new Color(redSum / count, greenSum / count, blueSum / count).getRGB();
+    // MODIFIES: this
+    // EFFECTS:  advances edit version and marks thumbnail as out of date
+    private void editsChanged() {
+        editVersion++;
+        isThumbnailStale = true;
     }
 
-    // EFFECTS: returns true if (x, y) is within the bounds of the image
-    private boolean isInBounds(int x, int y) {
-        return (x >= 0 && x < image.getWidth()) && (y >= 0 && y < image.getHeight());
+    // MODIFIES: this
+    // EFFECTS: converts image to black and white
+    public void toBlackAndWhite() {
+        applyEdit(Edit.blackAndWhite());
     }
 
-    // MODIFIES: ...
-    // EFFECTS:  ...
-    public void flipVertically() {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int tempColor;
+    // MODIFIES: this
+    // EFFECTS: flips the image horizontally
+    public void flipHorizontal() {
+        applyEdit(Edit.flipHorizontal());
+    }
 
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height/2; y++) {
-                tempColor = image.getRGB(x, height - 1 - y);
-                image.setRGB( x, height - 1-  y, image.getRGB(x, y));
-                image.setRGB(x, y, tempColor);
+    // MODIFIES: this
+    // EFFECTS: blurs the image, averaging each pixel with its immediate neighbours
+    public void blur() {
+        applyEdit(Edit.blur());
+    }
 
-            }
-        }
+    // REQUIRES: 0 <= radius <= BlurEngine.MAX_RADIUS
+    // MODIFIES: this
+    // EFFECTS: blurs the image, replacing each pixel by the average of the pixels within given radius of it
+    public void blur(int radius) {
+        applyEdit(Edit.blur(radius));
+    }
+
+    // REQUIRES: sigma >= 0
+    // MODIFIES: this
+    // EFFECTS: blurs the image with a Gaussian of given standard deviation, in pixels
+    public void gaussianBlur(double sigma) {
+        applyEdit(Edit.gaussianBlur(sigma));
+    }
+
+    // MODIFIES: this
+    // EFFECTS: flips the image vertically
+    public void flipVertically() {
+        applyEdit(Edit.flipVertically());
     }
 
 	@Override
@@ -1,18 +1,39 @@
 package photoalbum.photo;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 // Manages a collection of albums (and therefore photos)
 public class PhotoManager {
 	
 	private Set<Album> albums;
+	private Map<String, Album> albumsByName;
+
+    // Index of the photos having a creation date, sorted by creation date, in the first indexedCount elements of
+    // the arrays. It is built by the first date range query; once built, a photo added to one of the albums or
+    // whose creation date is set is moved to its sorted position, while adding an album invalidates it again.
+    // Changes made before the index is built (such as loading the library) therefore cost nothing.
+    private static final int INITIAL_INDEX_CAPACITY = 16;
+
+    private long[] indexedDates;
+    private Photo[] indexedPhotos;
+    private int indexedCount;
+    private boolean isDateIndexValid;
+    private long version;
 
     // EFFECTS: constructs a photo manager having an empty collection of photos
     public PhotoManager() {
         albums = new HashSet<Album>();
+        albumsByName = new HashMap<String, Album>();
+        isDateIndexValid = false;
     }
 
 	// EFFECTS: returns an unmodifiable set of albums in this collection
@@ -24,35 +45,167 @@ public class PhotoManager {
     // EFFECTS: adds an album to this collection, if it's not already there
 	public void addAlbum(Album album){
 
-	    albums.add(album);
+        if (albums.add(album)) {
+            albumsByName.put(album.getName(), album);
+            album.setPhotoManager(this);
+            photosChanged();
+        }
+	}
+
+	// EFFECTS: returns version of this collection, which changes whenever an album is added to it, a photo is added
+	//          to one of its albums or the creation date of one of its photos is set
+	public long getVersion() {
+		return version;
 	}
 
 	// EFFECTS: returns album with the given name (album names are assumed to be unique);
     //          returns null if no album found with the given name
 	public Album findAlbum(String name) {
-		for (Album anAlbum: albums) {
-            String albumName = anAlbum.getName();
-            if (albumName.equals(name)) {
-                return anAlbum;
-            }
-        }
-		return null;
+		return albumsByName.get(name);
 	}
 	
 	// EFFECTS: returns an unmodifiable set of all the photos in all the albums in this collection
-    //          whose creation date is between start and end (inclusive)
+    //          whose creation date is between start and end (inclusive); the photos are found by binary search
+    //          in the date index, rebuilding it first if it is out of date
 	public Set<Photo> findPhotosInDateRange(Date start, Date end){
-		Set<Photo> photos = new HashSet<Photo>();
+		if (!isDateIndexValid)
+            rebuildDateIndex();
 
-		for(Photo photo: getPhotos()) {
-            Date dateCreated = photo.getDateCreated();
-			if(!dateCreated.before(start) && !dateCreated.after(end))
-				photos.add(photo);
-		}
+		int first = findFirstIndexed(start.getTime(), true);
+		int last = findFirstIndexed(end.getTime(), false);
+
+		Set<Photo> photos = new HashSet<Photo>();
+		for (int i = first; i < last; i++)
+            photos.add(indexedPhotos[i]);
 
 		return Collections.unmodifiableSet(photos);
 	}
 
+    // MODIFIES: this
+    // EFFECTS:  advances version and marks the date index as out of date, so that it is rebuilt by the next date
+    //           range query
+    private void photosChanged() {
+        version++;
+        isDateIndexValid = false;
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  advances version and, if the date index is up to date, inserts given photo into it if it has a
+    //           creation date and is not already indexed (being in another album of this collection)
+    // NOTE:     should be called only by Album, when given photo is added to it
+    void photoAdded(Photo photo) {
+        version++;
+        if (isDateIndexValid && photo.getDateCreated() != null && findIndexed(photo, photo.getDateCreated()) < 0)
+            insertIntoDateIndex(photo);
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  advances version and, if the date index is up to date, moves given photo from its position for
+    //           given previous creation date (null if it had none) to its position for its current one
+    // NOTE:     should be called only by Album, when the creation date of given photo is set
+    void photoDateChanged(Photo photo, Date previousDate) {
+        version++;
+        if (!isDateIndexValid)
+            return;
+
+        if (previousDate != null) {
+            int position = findIndexed(photo, previousDate);
+            if (position < 0) {
+                // Not indexed under its previous date, e.g. because that Date object was modified since
+                isDateIndexValid = false;
+                return;
+            }
+            removeFromDateIndex(position);
+        }
+
+        if (photo.getDateCreated() != null)
+            insertIntoDateIndex(photo);
+    }
+
+    // EFFECTS: returns position in date index of the first photo created after given time (in epoch millis), or at
+    //          that time if inclusive; returns the number of indexed photos if there is none
+    private int findFirstIndexed(long time, boolean inclusive) {
+        int low = 0;
+        int high = indexedCount;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (indexedDates[middle] < time || (!inclusive && indexedDates[middle] == time))
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        return low;
+    }
+
+    // EFFECTS: returns position of given photo in the date index, looking among the photos indexed at given date;
+    //          returns -1 if it is not there
+    private int findIndexed(Photo photo, Date date) {
+        long time = date.getTime();
+        for (int i = findFirstIndexed(time, true); i < indexedCount && indexedDates[i] == time; i++) {
+            if (indexedPhotos[i] == photo)
+                return i;
+        }
+        return -1;
+    }
+
+    // REQUIRES: photo.getDateCreated() != null
+    // MODIFIES: this
+    // EFFECTS:  inserts given photo into the date index after the photos created at or before its creation date,
+    //           growing the index's arrays if they are full
+    private void insertIntoDateIndex(Photo photo) {
+        long time = photo.getDateCreated().getTime();
+        int position = findFirstIndexed(time, false);
+
+        if (indexedCount == indexedDates.length) {
+            int capacity = Math.max(INITIAL_INDEX_CAPACITY, 2 * indexedCount);
+            indexedDates = Arrays.copyOf(indexedDates, capacity);
+            indexedPhotos = Arrays.copyOf(indexedPhotos, capacity);
+        }
+
+        System.arraycopy(indexedDates, position, indexedDates, position + 1, indexedCount - position);
+        System.arraycopy(indexedPhotos, position, indexedPhotos, position + 1, indexedCount - position);
+        indexedDates[position] = time;
+        indexedPhotos[position] = photo;
+        indexedCount++;
+    }
+
+    // REQUIRES: 0 <= position < indexedCount
+    // MODIFIES: this
+    // EFFECTS:  removes the photo at given position from the date index
+    private void removeFromDateIndex(int position) {
+        System.arraycopy(indexedDates, position + 1, indexedDates, position, indexedCount - position - 1);
+        System.arraycopy(indexedPhotos, position + 1, indexedPhotos, position, indexedCount - position - 1);
+        indexedCount--;
+        indexedPhotos[indexedCount] = null;
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  rebuilds the date index from the photos in all the albums in this collection
+    private void rebuildDateIndex() {
+        List<Photo> dated = new ArrayList<Photo>();
+        for (Photo photo : getPhotos()) {
+            if (photo.getDateCreated() != null)
+                dated.add(photo);
+        }
+
+        Collections.sort(dated, new Comparator<Photo>() {
+            @Override
+            public int compare(Photo p1, Photo p2) {
+                return p1.getDateCreated().compareTo(p2.getDateCreated());
+            }
+        });
+
+        indexedCount = dated.size();
+        indexedDates = new long[indexedCount];
+        indexedPhotos = dated.toArray(new Photo[indexedCount]);
+        for (int i = 0; i < indexedCount; i++)
+            indexedDates[i] = indexedPhotos[i].getDateCreated().getTime();
+
+        isDateIndexValid = true;
+    }
+
     // EFFECTS: returns an unmodifiable set of all the photos in all the albums in this collection
     private Set<Photo> getPhotos(){
         Set<Photo> photos = new HashSet<Photo>();
@@ -0,0 +1,100 @@
+package photoalbum.photo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// An immutable selection of photos, ordered by creation date, recording the versions of the photo and tag managers
+// it was found with so that it can be reused until the photos, their dates or their tags change
+public class PhotoSelection {
+
+    // Orders photos by creation date, photos without a date first; photos created at the same time are ordered by id
+    public static final Comparator<Photo> BY_DATE = new Comparator<Photo>() {
+        @Override
+        public int compare(Photo a, Photo b) {
+            Date dateA = a.getDateCreated();
+            Date dateB = b.getDateCreated();
+            if (dateA != null && dateB != null && !dateA.equals(dateB))
+                return dateA.compareTo(dateB);
+            if (dateA == null && dateB != null)
+                return -1;
+            if (dateA != null && dateB == null)
+                return 1;
+            return Integer.compare(a.getId(), b.getId());
+        }
+    };
+
+    private List<Photo> photos;     // in date order
+    private Set<Photo> members;
+    private long photoVersion;
+    private long tagVersion;
+
+    // EFFECTS: constructs selection of given photos, found with given versions of the photo and tag managers
+    public PhotoSelection(Collection<Photo> photos, long photoVersion, long tagVersion) {
+        List<Photo> sorted = new ArrayList<Photo>(photos);
+        Collections.sort(sorted, BY_DATE);
+        this.photos = Collections.unmodifiableList(sorted);
+        members = new HashSet<Photo>(photos);
+        this.photoVersion = photoVersion;
+        this.tagVersion = tagVersion;
+    }
+
+    // EFFECTS: returns an unmodifiable list of the photos in this selection, in date order
+    public List<Photo> getPhotos() {
+        return photos;
+    }
+
+    public boolean contains(Photo photo) {
+        return members.contains(photo);
+    }
+
+    public int size() {
+        return photos.size();
+    }
+
+    public boolean isEmpty() {
+        return photos.isEmpty();
+    }
+
+    public long getPhotoVersion() {
+        return photoVersion;
+    }
+
+    public long getTagVersion() {
+        return tagVersion;
+    }
+
+    // EFFECTS: returns the photos in this selection that are not in previous (all of them if previous is null),
+    //          in date order
+    public List<Photo> getAddedSince(PhotoSelection previous) {
+        if (previous == null)
+            return photos;
+        return difference(this, previous);
+    }
+
+    // EFFECTS: returns the photos in previous that are not in this selection (none if previous is null), in the
+    //          order of previous
+    public List<Photo> getRemovedSince(PhotoSelection previous) {
+        if (previous == null)
+            return Collections.emptyList();
+        return difference(previous, this);
+    }
+
+    // EFFECTS: returns the photos of first that are not in second, in the order of first
+    private static List<Photo> difference(PhotoSelection first, PhotoSelection second) {
+        List<Photo> result = new ArrayList<Photo>();
+        if (first == second)
+            return result;
+
+        for (Photo photo : first.photos) {
+            if (!second.members.contains(photo))
+                result.add(photo);
+        }
+        return result;
+    }
+}
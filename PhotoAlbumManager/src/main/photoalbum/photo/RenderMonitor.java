@@ -0,0 +1,11 @@
+package photoalbum.photo;
+
+// Follows the rendering of a photo's edits, and can ask for it to stop
+public interface RenderMonitor {
+
+    // EFFECTS: called as rendering progresses, with the fraction of the work done (from 0 to 1)
+    void progress(double fraction);
+
+    // EFFECTS: returns true if rendering should stop; it is then abandoned at the next row or edit
+    boolean isCancelled();
+}
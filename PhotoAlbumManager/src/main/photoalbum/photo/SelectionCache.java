@@ -0,0 +1,52 @@
+package photoalbum.photo;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Cache of the photo selections most recently found, keyed by a description of the query that found them
+// (e.g. the album or set of tags selected). A selection is reused until the version of the photo manager changes,
+// or, for selections found from tags, the version of the tag manager.
+public class SelectionCache {
+    private static final int MAX_ENTRIES = 16;
+
+    public interface Query {
+        // EFFECTS: returns the photos currently matching this query
+        Collection<Photo> findPhotos();
+    }
+
+    private PhotoManager photoManager;
+    private TagManager tagManager;
+    private Map<Object, PhotoSelection> selections;
+
+    // EFFECTS: constructs empty cache of selections of photos managed by given photo and tag managers
+    public SelectionCache(PhotoManager photoManager, TagManager tagManager) {
+        this.photoManager = photoManager;
+        this.tagManager = tagManager;
+        selections = new LinkedHashMap<Object, PhotoSelection>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, PhotoSelection> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+
+    // REQUIRES: key has value-based equals and hashCode, and is equal only to keys of equivalent queries
+    // MODIFIES: this
+    // EFFECTS:  returns selection cached for given key if it is still up to date; otherwise finds the photos
+    //           matching query, caches their selection and returns it. usesTags tells whether the query's result
+    //           depends on the photos' tags.
+    public PhotoSelection getSelection(Object key, boolean usesTags, Query query) {
+        long photoVersion = photoManager.getVersion();
+        long tagVersion = usesTags ? tagManager.getVersion() : 0;
+
+        PhotoSelection selection = selections.get(key);
+        if (selection != null && selection.getPhotoVersion() == photoVersion
+                && selection.getTagVersion() == tagVersion)
+            return selection;
+
+        selection = new PhotoSelection(query.findPhotos(), photoVersion, tagVersion);
+        selections.put(key, selection);
+        return selection;
+    }
+}
@@ -1,5 +1,7 @@
 package photoalbum.photo;
 
+import photoalbum.utility.CompressedBitmap;
+
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -9,12 +11,16 @@ public class Tag {
 	
 	private String name;
 	private Set<Photo> photos;
+	private CompressedBitmap photoIds;  // ids of the photos in photos
+	private TagManager tagManager;
 
-    // EFFECTS: constructs a tag with the given name having no associated photos
+    // EFFECTS: constructs a tag with the given name having no associated photos, managed by given tag manager
     // NOTE:    should be called only by TagManager - clients should use TagManager.createTag(name)
-    Tag(String name) {
+    Tag(String name, TagManager tagManager) {
         setName(name);
         photos = new HashSet<Photo>();
+        photoIds = new CompressedBitmap();
+        this.tagManager = tagManager;
     }
 
 	public String getName() {
@@ -30,6 +36,9 @@ public class Tag {
     void addToPhoto(Photo photo){
 		if(!photos.contains(photo)){
 			photos.add(photo);
+			photoIds.add(photo.getId());
+			tagManager.registerPhoto(photo);
+			tagManager.photoTagsChanged();
 			photo.addTag(this);
 		}
 	}
@@ -39,6 +48,8 @@ public class Tag {
     void removeFromPhoto(Photo photo) {
 		if(photos.contains(photo)){
 			photos.remove(photo);
+			photoIds.remove(photo.getId());
+			tagManager.photoTagsChanged();
 			photo.removeTag(this);
 		}
 	}
@@ -48,6 +59,12 @@ public class Tag {
 		return Collections.unmodifiableSet(photos);
 	}
 
+    // EFFECTS: returns bitmap of the ids of the photos tagged with this tag
+    // NOTE:    should be called only by TagManager, which must not modify the bitmap
+    CompressedBitmap getPhotoIds() {
+        return photoIds;
+    }
+
 	@Override
 	public String toString(){
 		return name;
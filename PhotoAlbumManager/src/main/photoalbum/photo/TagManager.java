@@ -1,8 +1,13 @@
 package photoalbum.photo;
 
+import photoalbum.utility.CompressedBitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -11,10 +16,13 @@ import java.util.Set;
 public class TagManager {
 
 	private Map<String, Tag> tags;
+	private List<Photo> photosById;    // photos ever tagged with one of the tags, indexed by id (null elsewhere)
+	private long version;
 
     // EFFECTS: constructs a tag manager with an empty collection of tags
     public TagManager() {
         tags = new HashMap<String, Tag>();
+        photosById = new ArrayList<Photo>();
     }
 
 	// EFFECTS: returns tag with the given name or null if no such tag exists
@@ -30,7 +38,7 @@ public class TagManager {
 		if(tags.containsKey(name))
 			return tags.get(name);
 		
-		Tag tag = new Tag(name);
+		Tag tag = new Tag(name, this);
 		tags.put(name, tag);
 		return tag;
 	}
@@ -40,7 +48,8 @@ public class TagManager {
     // EFFECTS:  if oldName is the same as newName, returns false;
     //           if no tag with oldName exists, returns false;
     //           if tag with newName already exists, returns false;
-    //           otherwise, renames tag with oldName to newName and returns true;
+    //           otherwise, renames tag with oldName to newName, marks the photos tagged with it dirty and
+    //           returns true;
 	public boolean renameTag(String oldName, String newName) {
 
         // WARNING: this relies on the fact that Tag's
@@ -61,9 +70,17 @@ public class TagManager {
 		tags.remove(oldName);
 		tag.setName(newName);
 		tags.put(newName, tag);
+		for (Photo photo : tag.getPhotos())
+			photo.markDirty();
 		return true;
 	}
 	
+	// EFFECTS: returns version of this collection, which changes whenever a photo is tagged or untagged with one of
+	//          its tags
+	public long getVersion() {
+		return version;
+	}
+
 	// EFFECTS: returns an unmodifiable set of all the tags in this collection
 	public Set<Tag> getTags(){
 		Set<Tag> tagSet = new HashSet<Tag>(tags.values());
@@ -86,5 +103,66 @@ public class TagManager {
 		tags.remove(name);
 		return true;
 	}
-	
+
+    // EFFECTS: returns an unmodifiable set of the photos tagged with all of the given tags;
+    //          returns an empty set if no tags are given
+    public Set<Photo> findPhotosWithAllTags(Collection<Tag> tags) {
+        return findPhotos(tags, Collections.<Tag>emptySet(), Collections.<Tag>emptySet());
+    }
+
+    // EFFECTS: returns an unmodifiable set of the photos tagged with at least one of the given tags
+    public Set<Photo> findPhotosWithAnyTag(Collection<Tag> tags) {
+        return findPhotos(Collections.<Tag>emptySet(), tags, Collections.<Tag>emptySet());
+    }
+
+    // EFFECTS: returns an unmodifiable set of the photos tagged with all of the tags in allTags, with at least one of
+    //          the tags in anyTags (if it is not empty) and with none of the tags in noTags; returns an empty set if
+    //          allTags and anyTags are both empty. The query is evaluated on the bitmaps of the tags' photo ids.
+    public Set<Photo> findPhotos(Collection<Tag> allTags, Collection<Tag> anyTags, Collection<Tag> noTags) {
+        CompressedBitmap result = null;
+
+        for (Tag tag : allTags)
+            result = result == null ? tag.getPhotoIds() : result.and(tag.getPhotoIds());
+
+        if (!anyTags.isEmpty()) {
+            CompressedBitmap any = new CompressedBitmap();
+            for (Tag tag : anyTags)
+                any = any.or(tag.getPhotoIds());
+            result = result == null ? any : result.and(any);
+        }
+
+        if (result == null)
+            return Collections.emptySet();
+
+        for (Tag tag : noTags)
+            result = result.andNot(tag.getPhotoIds());
+
+        return Collections.unmodifiableSet(toPhotos(result));
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  advances version
+    // NOTE:     should be called only by Tag, when a photo is tagged or untagged with it
+    void photoTagsChanged() {
+        version++;
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  records photo so that it can be found from its id
+    // NOTE:     should be called only by Tag, when the photo is tagged with it
+    void registerPhoto(Photo photo) {
+        int id = photo.getId();
+        while (photosById.size() <= id)
+            photosById.add(null);
+        photosById.set(id, photo);
+    }
+
+    // EFFECTS: returns set of the photos having the ids in given bitmap
+    private Set<Photo> toPhotos(CompressedBitmap ids) {
+        int[] values = ids.toArray();
+        Set<Photo> photos = new HashSet<Photo>(2 * values.length);
+        for (int id : values)
+            photos.add(photosById.get(id));
+        return photos;
+    }
 }
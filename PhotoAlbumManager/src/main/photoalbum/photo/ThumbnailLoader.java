@@ -0,0 +1,97 @@
+package photoalbum.photo;
+
+import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Loads thumbnails of photos on a pool of background threads. Each request replaces the photos still waiting to be
+// loaded, so that thumbnails no longer wanted (e.g. scrolled out of view) are not loaded; photos are loaded in the
+// order requested.
+public class ThumbnailLoader {
+
+    public interface Listener {
+        // EFFECTS: called on a loader thread once the thumbnail of photo is loaded; image is null if it couldn't be
+        void thumbnailLoaded(Photo photo, Image image);
+    }
+
+    private ExecutorService executor;
+    private int threads;
+    private Listener listener;
+    private Deque<Photo> pending;       // photos waiting to be loaded, next first
+    private int activeWorkers;
+
+    // REQUIRES: threads > 0
+    // EFFECTS: constructs loader using given number of daemon threads, notifying given listener as thumbnails load
+    public ThumbnailLoader(int threads, Listener listener) {
+        this.threads = threads;
+        this.listener = listener;
+        pending = new ArrayDeque<Photo>();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Thumbnail loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  requests thumbnails of given photos, to be loaded in the given order; cancels the requests for
+    //           photos not yet being loaded
+    public synchronized void requestThumbnails(List<Photo> photos) {
+        pending.clear();
+        pending.addAll(photos);
+
+        while (activeWorkers < threads && activeWorkers < pending.size()) {
+            activeWorkers++;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    loadPending();
+                }
+            });
+        }
+    }
+
+    // EFFECTS: returns number of photos waiting to be loaded
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  cancels all requests and stops the loader threads once the thumbnails being loaded are loaded
+    public void shutdown() {
+        synchronized (this) {
+            pending.clear();
+        }
+        executor.shutdown();
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  loads the thumbnails of pending photos, one at a time, until none are left
+    private void loadPending() {
+        while (true) {
+            Photo photo;
+            synchronized (this) {
+                photo = pending.poll();
+                if (photo == null) {
+                    activeWorkers--;
+                    return;
+                }
+            }
+
+            Image image = null;
+            try {
+                image = photo.getThumbnailImage();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            listener.thumbnailLoaded(photo, image);
+        }
+    }
+}
@@ -31,10 +31,12 @@ class BrowsePanel extends JTabbedPane {
     private MainFrame mainFrame;
     private PhotoManager photoMan;
     private TagManager tagMan;
+    private SelectionCache selectionCache;
     private AlbumListModel albumsModel;
     private TagListModel tagsModel;
     private JList<Album> albumList;
     private JList<Tag> tagList;
+    private JCheckBox chkMatchAllTags;
     private PhotoFileChooser photoFileChooser;
     private Date startDate;
     private Date endDate;
@@ -46,10 +48,12 @@ class BrowsePanel extends JTabbedPane {
         this.mainFrame = mainFrame;
         photoMan = mainFrame.getPhotoManager();
         tagMan = mainFrame.getTagManager();
+        selectionCache = new SelectionCache(photoMan, tagMan);
         albumsModel = new AlbumListModel();
         tagsModel = new TagListModel();
         albumList = new JList<Album>(albumsModel);
         tagList = new JList<Tag>(tagsModel);
+        chkMatchAllTags = new JCheckBox("Match all selected tags");
         photoFileChooser = new PhotoFileChooser();
         lblStartDate = new JLabel();
         lblEndDate = new JLabel();
@@ -130,6 +134,12 @@ class BrowsePanel extends JTabbedPane {
         albumList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         albumList.addListSelectionListener(updatePhotoDisplay);
         tagList.addListSelectionListener(updatePhotoDisplay);
+        chkMatchAllTags.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                mainFrame.updateDisplayedPhotoSet();
+            }
+        });
 
         JButton btnNewTag = new JButton("New Tag");
         btnNewTag.addActionListener(new ActionListener() {
@@ -188,6 +198,7 @@ class BrowsePanel extends JTabbedPane {
 
         JPanel tagsPanel = new JPanel(new BorderLayout());
         tagsPanel.add(new JScrollPane(tagList), BorderLayout.CENTER);
+        tagsPanel.add(chkMatchAllTags, BorderLayout.PAGE_START);
         tagsPanel.add(btnNewTag, BorderLayout.PAGE_END);
         tagsPanel.setName("Tags");
 
@@ -217,7 +228,8 @@ class BrowsePanel extends JTabbedPane {
                 return album == null ? "No album selected" : "Album: "
                         + album.getName();
             case TAG:
-                return tagList.getSelectedValuesList().size() + " tag(s) selected";
+                return tagList.getSelectedValuesList().size() + " tag(s) selected"
+                        + (chkMatchAllTags.isSelected() ? " (matching all)" : "");
             case DATE:
                 return "Photos added between "
                         + new SimpleDateFormat().format(startDate) + " and "
@@ -227,26 +239,41 @@ class BrowsePanel extends JTabbedPane {
         }
     }
 
-    // EFFECTS: returns the set of photos corresponding to selected album, tags or date range
-    Set<Photo> getPhotoSelection() {
-        Set<Photo> photos = new TreeSet<Photo>(photosByDate);
-
+    // EFFECTS: returns the selection of photos corresponding to selected album, tags or date range; the selection
+    //          is taken from the selection cache while the photos and tags it was found from are unchanged
+    PhotoSelection getPhotoSelection() {
         switch (getSelectedIndex()) {
             case ALBUM:
-                Album album = getSelectedAlbum();
-                if (album != null)
-                    photos.addAll(album.getPhotos());
-                break;
+                final Album album = getSelectedAlbum();
+                return selectionCache.getSelection(Arrays.asList(ALBUM, album), false, new SelectionCache.Query() {
+                    @Override
+                    public Collection<Photo> findPhotos() {
+                        return album == null ? Collections.<Photo>emptySet() : album.getPhotos();
+                    }
+                });
             case TAG:
-                for (Tag tag : getSelectedTags())
-                    photos.addAll(tag.getPhotos());
-                break;
+                final Set<Tag> tags = getSelectedTags();
+                final boolean matchAll = chkMatchAllTags.isSelected();
+                return selectionCache.getSelection(Arrays.asList(TAG, tags, matchAll), true,
+                        new SelectionCache.Query() {
+                            @Override
+                            public Collection<Photo> findPhotos() {
+                                return matchAll ? tagMan.findPhotosWithAllTags(tags)
+                                        : tagMan.findPhotosWithAnyTag(tags);
+                            }
+                        });
             case DATE:
-                photos.addAll(photoMan.findPhotosInDateRange(startDate, endDate));
-                break;
+                final Date start = startDate;
+                final Date end = endDate;
+                return selectionCache.getSelection(Arrays.asList(DATE, start, end), false, new SelectionCache.Query() {
+                    @Override
+                    public Collection<Photo> findPhotos() {
+                        return photoMan.findPhotosInDateRange(start, end);
+                    }
+                });
+            default:
+                return new PhotoSelection(Collections.<Photo>emptySet(), photoMan.getVersion(), tagMan.getVersion());
         }
-
-        return photos;
     }
 
     // MODIFIES: this
@@ -342,14 +369,6 @@ class BrowsePanel extends JTabbedPane {
         }
     };
 
-    // Orders photos by date
-    private static Comparator<Photo> photosByDate = new Comparator<Photo>() {
-        @Override
-        public int compare(Photo a, Photo b) {
-            return a.getDateCreated().compareTo(b.getDateCreated());
-        }
-    };
-
     /**
      * ListModel representing the tags in the system
      */
@@ -1,5 +1,6 @@
 package photoalbum.ui;
 
+import photoalbum.photo.Photo;
 import photoalbum.photo.PhotoManager;
 import photoalbum.photo.TagManager;
 import photoalbum.utility.FileManager;
@@ -85,6 +86,13 @@ public class MainFrame extends JFrame {
         thumbnailsPanel.refresh();
     }
 
+    // MODIFIES: this
+    // EFFECTS:  updates the UI once the thumbnail of given photo has been rendered again
+    void thumbnailChanged(Photo photo) {
+        if (thumbnailsPanel != null)
+            thumbnailsPanel.thumbnailChanged(photo);
+    }
+
     // EFFECTS: returns menu bar
     private JMenuBar createMenuBar() {
         JMenuItem addPhotoMenuItem = new JMenuItem("Add Photos...");
@@ -117,7 +125,7 @@ public class MainFrame extends JFrame {
     // MODIFIES: this
     // EFFECTS:  populates library with albums and photos read from disk
     private void populateLibrary() {
-        fileManager.loadLibrary();
+        fileManager.loadLibraryInParallel();
         browsePanel.refresh();
     }
 }
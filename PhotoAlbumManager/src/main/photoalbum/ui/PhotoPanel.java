@@ -1,20 +1,28 @@
 package photoalbum.ui;
 
 import photoalbum.photo.Album;
+import photoalbum.photo.Edit;
 import photoalbum.photo.Photo;
+import photoalbum.photo.RenderMonitor;
 import photoalbum.photo.Tag;
 import photoalbum.photo.TagManager;
 
+import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
 
 // The panel for displaying a photo and managing its associated information
 class PhotoPanel extends JPanel {
@@ -26,8 +34,10 @@ class PhotoPanel extends JPanel {
 
     static final int TOTAL_WIDTH = IMAGE_PANEL_WIDTH + INFO_PANEL_WIDTH;
 
+    private MainFrame mainFrame;
     private TagManager tagMan;
     private Photo selectedPhoto;
+    private Photo imagePhoto;               // photo whose image is displayed, or null
 
     private JPanel imagePanel;
     private JPanel infoPanel;
@@ -37,7 +47,14 @@ class PhotoPanel extends JPanel {
     private JPanel descriptionBtnPanel;
 
     private java.util.List<JButton> editButtons;
+    private JButton btnUndo;
+    private JButton btnRedo;
+    private JButton btnExport;
+    private JProgressBar progressBar;
+    private JButton btnCancel;
     private Box imageEditBtnBox;
+    private RenderWorker renderWorker;      // renders edits of selected photo, or null
+    private int unrenderedEditCount;        // edits applied to selected photo since its image was last rendered
 
     private DefaultListModel<Tag> photoTagsModel;
     private JList<Tag> tagList;
@@ -46,6 +63,7 @@ class PhotoPanel extends JPanel {
     PhotoPanel(final MainFrame mainFrame) {
         super(new BorderLayout());
 
+        this.mainFrame = mainFrame;
         tagMan = mainFrame.getTagManager();
         imagePanel = new JPanel();
         imagePanel.setLayout(new BorderLayout());
@@ -176,63 +194,149 @@ class PhotoPanel extends JPanel {
         // Un-focus the description text area
         imagePanel.requestFocusInWindow();
 
-        // Add the image
+        refreshImage();
+
+        // Update the info panel
+        refreshInfoPanel();
+
+        repaint();
+        revalidate();
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  displays image of selected photo, with all its edits applied; edits not yet rendered, and the
+    //           thumbnail once edits change, are rendered in the background, and until the edits are rendered
+    //           the image displayed before stays displayed if it is of the same photo
+    private void refreshImage() {
+        Photo photo = selectedPhoto;
+
+        if (renderWorker != null && renderWorker.photo != photo) {
+            renderWorker = null;
+            unrenderedEditCount = 0;
+            showProgress(false);
+        }
+
+        if (photo != null && (photo.hasUnrenderedEdits() || photo.isThumbnailStale())) {
+            startRendering(photo);
+
+            if (photo.hasUnrenderedEdits()) {
+                if (imagePhoto != photo)
+                    showImage(photo, null, "Rendering edits...");
+                else
+                    enableEditButtons(true);
+                return;
+            }
+        }
+
+        showImage(photo, photo == null ? null : photo.getImage(),
+                photo == null ? "No photo selected." : "Image could not be loaded.");
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  displays given image of given photo or, if image is null, given message
+    private void showImage(Photo photo, Image image, String message) {
+        imagePhoto = image == null ? null : photo;
+
         imagePanel.removeAll();
-        if (photo != null) {
-            imagePanel.add(new JLabel(new ImageIcon(photo.getImage())), BorderLayout.CENTER);
+        if (image != null) {
+            imagePanel.add(new JLabel(new ImageIcon(image)), BorderLayout.CENTER);
         } else {
             Box hBox = Box.createHorizontalBox();
             hBox.add(Box.createHorizontalGlue());
-            hBox.add(new JLabel("No photo selected."));
+            hBox.add(new JLabel(message));
             hBox.add(Box.createHorizontalGlue());
             imagePanel.add(hBox, BorderLayout.CENTER);
         }
 
         imagePanel.add(imageEditBtnBox, BorderLayout.SOUTH);
+        enableEditButtons(photo != null);
 
-        // Update the info panel
-        refreshInfoPanel();
+        imagePanel.repaint();
+        imagePanel.revalidate();
+    }
 
-        repaint();
-        revalidate();
+    // MODIFIES: this
+    // EFFECTS:  starts rendering edits and thumbnail of given photo in the background, replacing any rendering
+    //           of that photo still under way
+    private void startRendering(Photo photo) {
+        if (renderWorker != null)
+            renderWorker.cancel(false);
+
+        renderWorker = new RenderWorker(photo);
+        progressBar.setValue(0);
+        showProgress(true);
+        renderWorker.execute();
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  stops rendering edits of selected photo and undoes the edits applied since its image was last
+    //           rendered
+    private void cancelRendering() {
+        if (renderWorker == null)
+            return;
+
+        renderWorker.cancel(false);
+        renderWorker = null;
+        showProgress(false);
+
+        for (int i = 0; i < unrenderedEditCount && selectedPhoto.hasUnrenderedEdits(); i++)
+            selectedPhoto.undo();
+        unrenderedEditCount = 0;
+        refreshImage();
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  shows or hides progress bar and cancel button
+    private void showProgress(boolean isVisible) {
+        progressBar.setVisible(isVisible);
+        btnCancel.setVisible(isVisible);
+        imageEditBtnBox.revalidate();
     }
 
     // MODIFIES: this
     // EFFECTS: returns box containing buttons for editing image
     private Box createImageEditButtons() {
-        createEditButton("Flip Horizontal", new ActionListener() {
+        createEditButton(Edit.flipHorizontal());
+        createEditButton(Edit.blackAndWhite());
+        createEditButton(Edit.blur());
+        createEditButton(Edit.flipVertically());
+
+        btnUndo = new JButton("Undo");
+        btnUndo.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                selectedPhoto.flipHorizontal();
-                repaint();
-                revalidate();
+                selectedPhoto.undo();
+                unrenderedEditCount = Math.max(0, unrenderedEditCount - 1);
+                refreshImage();
             }
         });
 
-        createEditButton("Black & White", new ActionListener() {
+        btnRedo = new JButton("Redo");
+        btnRedo.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                selectedPhoto.toBlackAndWhite();
-                repaint();
-                revalidate();
+                selectedPhoto.redo();
+                if (selectedPhoto.hasUnrenderedEdits())
+                    unrenderedEditCount++;
+                refreshImage();
             }
         });
 
-        createEditButton("Blur", new ActionListener() {
+        btnExport = new JButton("Export...");
+        btnExport.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                selectedPhoto.blur();
-                repaint();
-                revalidate();
+                exportSelectedPhoto();
             }
         });
 
-        createEditButton("Flip Vertically", new ActionListener() {
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setMaximumSize(new Dimension(100, progressBar.getPreferredSize().height));
+        btnCancel = new JButton("Cancel");
+        btnCancel.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                selectedPhoto.flipVertically();
-                repaint();
-                revalidate();
+                cancelRendering();
             }
         });
 
@@ -243,18 +347,52 @@ class PhotoPanel extends JPanel {
         for (JButton btn : editButtons)
             hBox.add(btn);
 
+        hBox.add(Box.createHorizontalStrut(10));
+        hBox.add(btnUndo);
+        hBox.add(btnRedo);
+
+        hBox.add(Box.createHorizontalStrut(10));
+        hBox.add(btnExport);
+
+        hBox.add(Box.createHorizontalStrut(10));
+        hBox.add(progressBar);
+        hBox.add(btnCancel);
+        progressBar.setVisible(false);
+        btnCancel.setVisible(false);
+
         hBox.add(Box.createHorizontalGlue());
         return hBox;
     }
 
     // MODIFIES: this
-    // EFFECTS: creates edit button with given title and listener and adds it to list of edit buttons
-    private void createEditButton(String title, ActionListener actionListener) {
-        JButton btn = new JButton(title);
-        btn.addActionListener(actionListener);
+    // EFFECTS: creates button applying given edit to selected photo and adds it to list of edit buttons
+    private void createEditButton(final Edit edit) {
+        JButton btn = new JButton(edit.getName());
+        btn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                selectedPhoto.applyEdit(edit);
+                unrenderedEditCount++;
+                refreshImage();
+            }
+        });
         editButtons.add(btn);
     }
 
+    // EFFECTS: asks user for a png file and writes the selected photo to it in the background, at the full
+    //          resolution of its file and with all its edits applied
+    private void exportSelectedPhoto() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File(selectedPhoto.getName() + ".png"));
+        if (chooser.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION)
+            return;
+
+        File file = chooser.getSelectedFile();
+        if (!file.getName().toLowerCase().endsWith(".png"))
+            file = new File(file.getParentFile(), file.getName() + ".png");
+        new ExportWorker(selectedPhoto, file).execute();
+    }
+
     // MODIFIES: this
     // EFFECTS:  updates info panel to display information for selected photo
     private void refreshInfoPanel() {
@@ -274,19 +412,120 @@ class PhotoPanel extends JPanel {
             for (Tag tag : tags)
                 photoTagsModel.addElement(tag);
 
-            enableEditButtons(true);
             infoPanel.setVisible(true);
         }
         else {
-            enableEditButtons(false);
             infoPanel.setVisible(false);
         }
     }
 
     // MODIFIES: this
-    // EFFECTS: sets enabled status of all edit buttons to isEnabled
+    // EFFECTS: sets enabled status of all edit buttons and the export button to isEnabled; undo and redo buttons
+    //          are only enabled if there is an edit to undo or redo
     private void enableEditButtons(boolean isEnabled) {
         for (JButton btn : editButtons)
             btn.setEnabled(isEnabled);
+
+        btnExport.setEnabled(isEnabled);
+        btnUndo.setEnabled(isEnabled && selectedPhoto.canUndo());
+        btnRedo.setEnabled(isEnabled && selectedPhoto.canRedo());
+    }
+
+    // Renders the edits and thumbnail of a photo on a background thread, reporting progress in the progress bar;
+    // the image is displayed, if its photo is still selected, and the thumbnail repainted once both are published
+    private class RenderWorker extends SwingWorker<BufferedImage, Void> {
+        private final Photo photo;
+
+        // EFFECTS: constructs worker rendering given photo
+        RenderWorker(Photo photo) {
+            this.photo = photo;
+
+            addPropertyChangeListener(new PropertyChangeListener() {
+                @Override
+                public void propertyChange(PropertyChangeEvent evt) {
+                    if (renderWorker == RenderWorker.this && "progress".equals(evt.getPropertyName()))
+                        progressBar.setValue((Integer) evt.getNewValue());
+                }
+            });
+        }
+
+        @Override
+        protected BufferedImage doInBackground() {
+            return photo.renderEdits(new RenderMonitor() {
+                @Override
+                public void progress(double fraction) {
+                    setProgress((int) Math.round(100 * Math.min(fraction, 1)));
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return RenderWorker.this.isCancelled();
+                }
+            });
+        }
+
+        // EFFECTS: publishes rendered image to the UI, unless rendering was cancelled or superseded
+        @Override
+        protected void done() {
+            boolean isCurrent = renderWorker == this;
+            if (isCancelled())
+                return;
+
+            BufferedImage image = null;
+            try {
+                image = get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+
+            // A null image means either that edits changed, and a newer rendering is under way, or that the
+            // image couldn't be loaded
+            if (image != null)
+                mainFrame.thumbnailChanged(photo);
+            if (!isCurrent)
+                return;
+
+            renderWorker = null;
+            unrenderedEditCount = 0;
+            showProgress(false);
+            showImage(photo, image, "Image could not be loaded.");
+        }
+    }
+
+    // Renders a photo at full resolution and writes it to a png file on a background thread, so that the photo
+    // can still be viewed and edited while its file is decoded; reports to the user if it cannot be exported
+    private class ExportWorker extends SwingWorker<Boolean, Void> {
+        private final Photo photo;
+        private final File file;
+
+        // EFFECTS: constructs worker exporting given photo to given file
+        ExportWorker(Photo photo, File file) {
+            this.photo = photo;
+            this.file = file;
+        }
+
+        @Override
+        protected Boolean doInBackground() throws Exception {
+            BufferedImage image = photo.renderFullResolution();
+            return image != null && ImageIO.write(image, "png", file);
+        }
+
+        // EFFECTS: reports to user if photo could not be exported
+        @Override
+        protected void done() {
+            boolean isExported = false;
+            try {
+                isExported = get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Reported below
+            }
+
+            if (!isExported)
+                PopUps.errorPopup(mainFrame, "Could not export " + photo.getName() + " to " + file.getName() + ".");
+        }
     }
 }
@@ -1,105 +1,389 @@
 package photoalbum.ui;
 
+import photoalbum.photo.ImagePrefetcher;
 import photoalbum.photo.Photo;
+import photoalbum.photo.PhotoSelection;
+import photoalbum.photo.ThumbnailLoader;
+import photoalbum.utility.Thumbnail;
 
 import javax.swing.*;
+import javax.swing.border.Border;
 import javax.swing.border.CompoundBorder;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.LineBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 import java.awt.*;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
-// A scroll pane that contains thumbnail images
+// A scroll pane that contains thumbnail images, shown in a single-row list; only the visible cells of the list
+// are painted, all by the same renderer, so the cost of displaying a selection doesn't grow with its size.
+// Thumbnails not yet loaded are shown as placeholders while they are loaded in the background, visible ones first.
 class ThumbnailsPanel extends JScrollPane {
+    private static final int LOADER_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static final Color PLACEHOLDER_COLOR = new Color(0xE0E0E0);
+
     private static final int MAX_WIDTH = PhotoPanel.TOTAL_WIDTH;
     private static final int MAX_HEIGHT = 135;
     private static final int THUMBNAIL_BORDER = 2;
+    private static final int NAME_HEIGHT = 20;
+    private static final int CELL_WIDTH = Thumbnail.MAX_WIDTH + 4 * THUMBNAIL_BORDER;
+    private static final int CELL_HEIGHT = Thumbnail.MAX_HEIGHT + NAME_HEIGHT + 4 * THUMBNAIL_BORDER;
     private static final int DEFAULT_LABEL_WIDTH = 200;
     private static final int DEFAULT_LABEL_HEIGHT = 100;
 
     private PhotoPanel photoPanel;
     private BrowsePanel browsePanel;
-    private JPanel thumbnailContainer;
+    private ThumbnailListModel thumbnailsModel;
+    private JList<Photo> thumbnailList;
+    private JLabel noPhotosLabel;
+    private PhotoSelection displayedSelection;
+    private boolean isRefreshing;
+    private ThumbnailLoader thumbnailLoader;
+    private ImagePrefetcher imagePrefetcher;
+    private Set<Photo> unavailable;     // photos whose thumbnails couldn't be loaded since the last refresh
 
-    // EFFECTS: constructs thumbnails panel
-    ThumbnailsPanel(PhotoPanel photoPanel, BrowsePanel browsePanel) {
+    // EFFECTS: constructs thumbnails panel; when a thumbnail is selected, corresponding photo is displayed in
+    //          photo panel
+    ThumbnailsPanel(final PhotoPanel photoPanel, BrowsePanel browsePanel) {
         this.photoPanel = photoPanel;
         this.browsePanel = browsePanel;
         setMaximumSize(new Dimension(MAX_WIDTH, MAX_HEIGHT));
         setPreferredSize(getMaximumSize());
         setBorder(null);
         setHorizontalScrollBarPolicy(HORIZONTAL_SCROLLBAR_ALWAYS);
+
+        noPhotosLabel = new JLabel("No photos to display.");
+        noPhotosLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        noPhotosLabel.setPreferredSize(new Dimension(DEFAULT_LABEL_WIDTH, DEFAULT_LABEL_HEIGHT));
+
+        // Fixed cell sizes spare the list from measuring every cell to lay itself out
+        thumbnailsModel = new ThumbnailListModel();
+        thumbnailList = new JList<Photo>(thumbnailsModel);
+        thumbnailList.setLayoutOrientation(JList.HORIZONTAL_WRAP);
+        thumbnailList.setVisibleRowCount(1);
+        thumbnailList.setFixedCellWidth(CELL_WIDTH);
+        thumbnailList.setFixedCellHeight(CELL_HEIGHT);
+        thumbnailList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        thumbnailList.setCellRenderer(new ThumbnailRenderer());
+        unavailable = new HashSet<Photo>();
+        imagePrefetcher = new ImagePrefetcher();
+        thumbnailList.addListSelectionListener(new ListSelectionListener() {
+            @Override
+            public void valueChanged(ListSelectionEvent e) {
+                // display the photo in the lower area
+                if (!e.getValueIsAdjusting() && !isRefreshing)
+                    displaySelectedPhoto();
+            }
+        });
+
+        // Repaint the list on the event thread as thumbnails arrive
+        thumbnailLoader = new ThumbnailLoader(LOADER_THREADS, new ThumbnailLoader.Listener() {
+            @Override
+            public void thumbnailLoaded(final Photo photo, final Image image) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (image == null)
+                            unavailable.add(photo);
+                        thumbnailList.repaint();
+                    }
+                });
+            }
+        });
+
+        // Load the thumbnails scrolled into view
+        getViewport().addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                requestVisibleThumbnails();
+            }
+        });
     }
 
     // MODIFIES: this
-    // EFFECTS:  display thumbnails for photos currently selected in browse panel;
-    //           select first thumbnail (if any) and display corresponding photo in photo panel
+    // EFFECTS:  display thumbnails for photos currently selected in browse panel; if the photo displayed in photo
+    //           panel is still selected it stays displayed, otherwise select first thumbnail (if any) and display
+    //           corresponding photo in photo panel. Thumbnails that couldn't be loaded are tried again.
     void refresh() {
-        Set<Photo> photos = browsePanel.getPhotoSelection();
-        thumbnailContainer = new JPanel();
+        PhotoSelection selection = browsePanel.getPhotoSelection();
+        if (selection == displayedSelection)
+            return;
 
-        if (photos.isEmpty()) {
-            JLabel label = new JLabel("No photos to display.");
-            label.setHorizontalAlignment(SwingConstants.CENTER);
-            label.setPreferredSize(new Dimension(DEFAULT_LABEL_WIDTH, DEFAULT_LABEL_HEIGHT));
-            thumbnailContainer.add(label);
+        Photo selectedPhoto = thumbnailList.getSelectedValue();
+        displayedSelection = selection;
+        unavailable.clear();
+
+        isRefreshing = true;
+        try {
+            thumbnailsModel.setSelection(selection);
+            thumbnailList.clearSelection();
+        } finally {
+            isRefreshing = false;
         }
 
-        LabelledThumbnail firstLabel = null;
-        for (Photo p : photos) {
-            thumbnailContainer.add((firstLabel == null ? firstLabel = new LabelledThumbnail(p) : new LabelledThumbnail(p)));
+        // Setting the view again would scroll the list back to its start
+        Component view = selection.isEmpty() ? noPhotosLabel : thumbnailList;
+        if (getViewport().getView() != view) {
+            setViewportView(view);
+            repaint();
+            revalidate();
         }
 
-        setViewportView(thumbnailContainer);
-        repaint();
-        revalidate();
+        if (selection.isEmpty()) {
+            photoPanel.displayPhoto(null);
+            return;
+        }
 
-        if (firstLabel != null) {
-            firstLabel.setSelectedBorder(true);
-            firstLabel.scrollRectToVisible(new Rectangle(0, 0, 5, 5));
+        // Re-selecting the photo already displayed doesn't fire a selection event, so doesn't display it again
+        int index = 0;
+        if (selectedPhoto != null && selection.contains(selectedPhoto)) {
+            index = selection.getPhotos().indexOf(selectedPhoto);
+            isRefreshing = true;
         }
 
-        photoPanel.displayPhoto(firstLabel == null ? null : firstLabel.photo);
+        try {
+            thumbnailList.setSelectedIndex(index);
+        } finally {
+            isRefreshing = false;
+        }
+        thumbnailList.ensureIndexIsVisible(index);
+        imagePrefetcher.prefetchAround(selection.getPhotos(), index);
+        requestVisibleThumbnails();
     }
 
-    // Panel in which thumbnail is displayed
-    private class LabelledThumbnail extends JPanel {
-        private Photo photo;
+    // MODIFIES: this
+    // EFFECTS:  repaints thumbnail of given photo, if it is displayed, loading it again if it couldn't be loaded
+    void thumbnailChanged(Photo photo) {
+        unavailable.remove(photo);
+        if (displayedSelection != null && displayedSelection.contains(photo)) {
+            thumbnailList.repaint();
+            requestVisibleThumbnails();
+        }
+    }
 
-        // EFFECTS: constructs labelled thumbnail for given photo;
-        //          when thumbnail is selected, corresponding photo is displayed in photo panel
-        public LabelledThumbnail(Photo p) {
-            super(new BorderLayout());
-            photo = p;
+    // MODIFIES: this
+    // EFFECTS:  displays photo selected in the thumbnail list in photo panel, then prefetches the images of the
+    //           photos on either side of it
+    private void displaySelectedPhoto() {
+        int index = thumbnailList.getSelectedIndex();
+        photoPanel.displayPhoto(thumbnailList.getSelectedValue());
+        if (index >= 0)
+            imagePrefetcher.prefetchAround(displayedSelection.getPhotos(), index);
+    }
 
-            JLabel nameLabel = new JLabel(p.getName());
-            nameLabel.setHorizontalAlignment(SwingConstants.CENTER);
-            add(nameLabel, BorderLayout.SOUTH);
-            add(new JLabel(new ImageIcon(p.getThumbnailImage())), BorderLayout.CENTER);
-            setSelectedBorder(false);
-
-            addMouseListener(new MouseAdapter() {
-                @Override
-                public void mousePressed(MouseEvent e) {
-                    // update the thumbnail borders indicating the selected photo
-                    for (Component c : ThumbnailsPanel.this.thumbnailContainer.getComponents())
-                        ((LabelledThumbnail) c).setSelectedBorder(c == LabelledThumbnail.this);
-
-                    // display the photo in the lower area
-                    photoPanel.displayPhoto(photo);
+    // MODIFIES: this
+    // EFFECTS:  requests the thumbnails not yet loaded of the visible cells, then of the next and previous
+    //           viewport's worth of cells; requests for other cells are cancelled
+    private void requestVisibleThumbnails() {
+        List<Photo> requested = new ArrayList<Photo>();
+        int size = thumbnailsModel.getSize();
+
+        if (size > 0) {
+            int first = thumbnailList.getFirstVisibleIndex();
+            int last = thumbnailList.getLastVisibleIndex();
+            if (first < 0) {
+                first = 0;
+                last = Math.min(size, MAX_WIDTH / CELL_WIDTH + 1) - 1;
+            }
+            int page = last - first + 1;
+
+            addUnloaded(requested, first, last);
+            addUnloaded(requested, last + 1, Math.min(size - 1, last + page));
+            addUnloaded(requested, Math.max(0, first - page), first - 1);
+        }
+
+        thumbnailLoader.requestThumbnails(requested);
+    }
+
+    // MODIFIES: photos
+    // EFFECTS:  adds to photos those between indexes from and to (inclusive) in the thumbnail list whose thumbnails
+    //           are not loaded yet
+    private void addUnloaded(List<Photo> photos, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            Photo photo = thumbnailsModel.getElementAt(i);
+            if (photo.peekThumbnailImage() == null && !unavailable.contains(photo))
+                photos.add(photo);
+        }
+    }
+
+    // List model holding the photos of the displayed selection. When the selection changes, the list is told of
+    // each run of photos removed from it and added to it, so that it keeps its scroll position and only lays out
+    // and repaints the cells that moved; a change that reorders the photos kept, or that is made of too many runs
+    // for this to pay off, is reported as a replacement of all the photos.
+    private static class ThumbnailListModel extends AbstractListModel<Photo> {
+        private static final int MAX_CHANGED_RUNS = 32;
+
+        private List<Photo> photos = new ArrayList<Photo>();
+        private PhotoSelection selection;       // selection whose photos are held, or null
+
+        @Override
+        public int getSize() {
+            return photos.size();
+        }
+
+        @Override
+        public Photo getElementAt(int index) {
+            return photos.get(index);
+        }
+
+        // MODIFIES: this
+        // EFFECTS:  replaces the photos of this model with those of given selection
+        void setSelection(PhotoSelection newSelection) {
+            PhotoSelection previous = selection;
+            selection = newSelection;
+
+            if (previous == null || !keepsOrder(previous, newSelection)
+                    || countRuns(previous.getPhotos(), newSelection) + countRuns(newSelection.getPhotos(), previous)
+                    > MAX_CHANGED_RUNS) {
+                replacePhotos(newSelection.getPhotos());
+                return;
+            }
+
+            removeRuns(new HashSet<Photo>(newSelection.getRemovedSince(previous)));
+            addRuns(newSelection.getPhotos(), new HashSet<Photo>(newSelection.getAddedSince(previous)));
+        }
+
+        // MODIFIES: this
+        // EFFECTS:  replaces all the photos of this model with given photos
+        private void replacePhotos(List<Photo> newPhotos) {
+            int oldSize = photos.size();
+            photos = new ArrayList<Photo>(newPhotos);
+
+            if (oldSize > 0)
+                fireIntervalRemoved(this, 0, oldSize - 1);
+            if (!photos.isEmpty())
+                fireIntervalAdded(this, 0, photos.size() - 1);
+        }
+
+        // MODIFIES: this
+        // EFFECTS:  removes given photos, a run of consecutive photos at a time from the last run to the first, so
+        //           that the indexes of the runs still to be removed stay valid
+        private void removeRuns(Set<Photo> removed) {
+            int end = photos.size() - 1;
+            while (end >= 0) {
+                if (!removed.contains(photos.get(end))) {
+                    end--;
+                    continue;
                 }
-            });
+
+                int start = end;
+                while (start > 0 && removed.contains(photos.get(start - 1)))
+                    start--;
+                photos.subList(start, end + 1).clear();
+                fireIntervalRemoved(this, start, end);
+                end = start - 1;
+            }
         }
 
+        // REQUIRES: the photos of this model are those of newPhotos other than added, in the same order
         // MODIFIES: this
-        // EFFECTS:  if selected, set blue border, otherwise set empty border
-        private void setSelectedBorder(boolean selected) {
-            setBorder(selected ?
-                    new CompoundBorder(new LineBorder(Color.BLUE, THUMBNAIL_BORDER),
-                            new EmptyBorder(THUMBNAIL_BORDER, THUMBNAIL_BORDER, THUMBNAIL_BORDER, THUMBNAIL_BORDER))
-                    : new EmptyBorder(2 * THUMBNAIL_BORDER, 2 * THUMBNAIL_BORDER, 2 * THUMBNAIL_BORDER, 2 * THUMBNAIL_BORDER));
+        // EFFECTS:  inserts given added photos at their index in newPhotos, a run of consecutive photos at a time
+        //           from the first run to the last
+        private void addRuns(List<Photo> newPhotos, Set<Photo> added) {
+            int start = 0;
+            while (start < newPhotos.size()) {
+                if (!added.contains(newPhotos.get(start))) {
+                    start++;
+                    continue;
+                }
+
+                int end = start;
+                while (end + 1 < newPhotos.size() && added.contains(newPhotos.get(end + 1)))
+                    end++;
+                photos.addAll(start, newPhotos.subList(start, end + 1));
+                fireIntervalAdded(this, start, end);
+                start = end + 1;
+            }
+        }
+
+        // EFFECTS: returns true if the photos in both given selections are in the same order in each
+        private static boolean keepsOrder(PhotoSelection previous, PhotoSelection current) {
+            return getKept(previous, current).equals(getKept(current, previous));
+        }
+
+        // EFFECTS: returns the photos of given selection that are also in other, in order
+        private static List<Photo> getKept(PhotoSelection selection, PhotoSelection other) {
+            List<Photo> kept = new ArrayList<Photo>();
+            for (Photo photo : selection.getPhotos()) {
+                if (other.contains(photo))
+                    kept.add(photo);
+            }
+            return kept;
+        }
+
+        // EFFECTS: returns the number of runs of consecutive photos among given photos that are not in other
+        private static int countRuns(List<Photo> photos, PhotoSelection other) {
+            int runs = 0;
+            boolean isInRun = false;
+            for (Photo photo : photos) {
+                boolean isChanged = !other.contains(photo);
+                if (isChanged && !isInRun)
+                    runs++;
+                isInRun = isChanged;
+            }
+            return runs;
+        }
+    }
+
+    // Renderer shared by all the cells of the thumbnail list: paints the thumbnail of a photo above its name, or a
+    // placeholder while the thumbnail is loading
+    private class ThumbnailRenderer extends JPanel implements ListCellRenderer<Photo> {
+        private final Border selectedBorder = new CompoundBorder(
+                new LineBorder(Color.BLUE, THUMBNAIL_BORDER),
+                new EmptyBorder(THUMBNAIL_BORDER, THUMBNAIL_BORDER, THUMBNAIL_BORDER, THUMBNAIL_BORDER));
+        private final Border unselectedBorder = new EmptyBorder(
+                2 * THUMBNAIL_BORDER, 2 * THUMBNAIL_BORDER, 2 * THUMBNAIL_BORDER, 2 * THUMBNAIL_BORDER);
+
+        private JLabel nameLabel;
+        private Image thumbnailImage;
+        private boolean isLoading;
+
+        // EFFECTS: constructs renderer
+        ThumbnailRenderer() {
+            super(new BorderLayout());
+            nameLabel = new JLabel();
+            nameLabel.setHorizontalAlignment(SwingConstants.CENTER);
+            nameLabel.setPreferredSize(new Dimension(Thumbnail.MAX_WIDTH, NAME_HEIGHT));
+            add(nameLabel, BorderLayout.SOUTH);
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<? extends Photo> list, Photo photo, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            nameLabel.setText(photo.getName());
+            thumbnailImage = photo.peekThumbnailImage();
+            isLoading = thumbnailImage == null && !unavailable.contains(photo);
+            setBorder(isSelected ? selectedBorder : unselectedBorder);
+            setBackground(list.getBackground());
+            return this;
+        }
+
+        // EFFECTS: paints the thumbnail image, or the placeholder, centred in the area above the name
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+
+            Insets insets = getInsets();
+            int areaWidth = getWidth() - insets.left - insets.right;
+            int areaHeight = getHeight() - insets.top - insets.bottom - NAME_HEIGHT;
+
+            if (isLoading) {
+                g.setColor(PLACEHOLDER_COLOR);
+                g.fillRect(insets.left, insets.top, areaWidth, areaHeight);
+                return;
+            }
+            if (thumbnailImage == null)
+                return;
+
+            int x = insets.left + (areaWidth - thumbnailImage.getWidth(null)) / 2;
+            int y = insets.top + (areaHeight - thumbnailImage.getHeight(null)) / 2;
+            g.drawImage(thumbnailImage, x, y, null);
         }
     }
 }
@@ -0,0 +1,192 @@
+package photoalbum.utility;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Blurs images held as arrays of packed RGB pixels. A box blur replaces each pixel by the average of the pixels
+// in the square of given radius around it (clipped to the image), computed with running sums in each direction,
+// so its cost does not depend on the radius; a Gaussian blur is approximated by three successive box blurs.
+// The image is split into bands of rows that are blurred in parallel.
+public class BlurEngine {
+    public static final int MAX_RADIUS = 1000;      // keeps sums of up to (2 * MAX_RADIUS + 1)^2 pixels in an int
+
+    private static final int MIN_BAND_HEIGHT = 64;
+    private static final int GAUSSIAN_PASSES = 3;
+    private static final int RECIPROCAL_SHIFT = 52;
+
+    // REQUIRES: pixels.length == width * height, 0 <= radius <= MAX_RADIUS
+    // EFFECTS:  returns new array holding given pixels box blurred with given radius; the alpha of the given
+    //           pixels is ignored and the blurred pixels are opaque
+    public static int[] boxBlur(int[] pixels, int width, int height, int radius) {
+        int[] blurred = new int[pixels.length];
+        ForkJoinPool.commonPool().invoke(new BlurTask(pixels, blurred, width, height, radius, 0, height));
+        return blurred;
+    }
+
+    // REQUIRES: pixels.length == width * height, sigma >= 0 and small enough for the boxes to fit within MAX_RADIUS
+    // EFFECTS:  returns new array holding given pixels blurred with a Gaussian of given standard deviation,
+    //           approximated by three box blurs; the alpha of the given pixels is ignored and the blurred
+    //           pixels are opaque
+    public static int[] gaussianBlur(int[] pixels, int width, int height, double sigma) {
+        int[] blurred = pixels;
+        for (int radius : getBoxRadiiForGaussian(sigma))
+            blurred = boxBlur(blurred, width, height, radius);
+
+        return blurred == pixels ? pixels.clone() : blurred;
+    }
+
+    // EFFECTS: returns radii of the GAUSSIAN_PASSES box blurs whose combination best approximates a Gaussian
+    //          of given standard deviation (the variance of a box of width w being (w^2 - 1) / 12)
+    static int[] getBoxRadiiForGaussian(double sigma) {
+        double idealWidth = Math.sqrt(12 * sigma * sigma / GAUSSIAN_PASSES + 1);
+        int lowerWidth = (int) Math.floor(idealWidth);
+        if (lowerWidth % 2 == 0)
+            lowerWidth--;
+        int upperWidth = lowerWidth + 2;
+
+        // Number of passes using the lower width, so that the total variance is as close as possible to sigma^2
+        double idealLowerPasses = (12 * sigma * sigma - GAUSSIAN_PASSES * lowerWidth * lowerWidth
+                - 4 * GAUSSIAN_PASSES * lowerWidth - 3 * GAUSSIAN_PASSES) / (-4 * lowerWidth - 4);
+        long lowerPasses = Math.round(idealLowerPasses);
+
+        int[] radii = new int[GAUSSIAN_PASSES];
+        for (int i = 0; i < GAUSSIAN_PASSES; i++)
+            radii[i] = ((i < lowerPasses ? lowerWidth : upperWidth) - 1) / 2;
+        return radii;
+    }
+
+    // REQUIRES: 0 < count <= (2 * MAX_RADIUS + 1)^2
+    // EFFECTS: returns the fixed-point reciprocal of count, such that (sum * reciprocal) >>> RECIPROCAL_SHIFT
+    //          equals sum / count for every sum of count channel values (i.e. 0 <= sum <= 255 * count);
+    //          this is exact because the rounding error of the reciprocal is below 1, and 255 * count^2 stays
+    //          below 2^RECIPROCAL_SHIFT
+    private static long getReciprocal(int count) {
+        return ((1L << RECIPROCAL_SHIFT) + count - 1) / count;
+    }
+
+    // EFFECTS: returns number of pixels in the window of given radius around each position of a line of
+    //          given length, once the window is clipped to the line
+    private static int[] getWindowCounts(int length, int radius) {
+        int[] counts = new int[length];
+        for (int i = 0; i < length; i++)
+            counts[i] = Math.min(i + radius, length - 1) - Math.max(i - radius, 0) + 1;
+        return counts;
+    }
+
+    // Box blurs a band of rows, splitting it in two while it is larger than a band
+    private static class BlurTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] source;
+        private final int[] dest;
+        private final int width;
+        private final int height;
+        private final int radius;
+        private final int firstRow;
+        private final int endRow;
+
+        // EFFECTS: constructs task blurring rows firstRow (inclusive) to endRow (exclusive) of source into dest
+        BlurTask(int[] source, int[] dest, int width, int height, int radius, int firstRow, int endRow) {
+            this.source = source;
+            this.dest = dest;
+            this.width = width;
+            this.height = height;
+            this.radius = radius;
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        protected void compute() {
+            // Each band re-sums the rows around its first row, so bands are kept large compared to the radius
+            int bandHeight = Math.max(MIN_BAND_HEIGHT, 4 * radius);
+
+            if (endRow - firstRow <= bandHeight) {
+                blurRows();
+            } else {
+                int middleRow = (firstRow + endRow) >>> 1;
+                invokeAll(new BlurTask(source, dest, width, height, radius, firstRow, middleRow),
+                        new BlurTask(source, dest, width, height, radius, middleRow, endRow));
+            }
+        }
+
+        // MODIFIES: dest
+        // EFFECTS:  stores box blurred rows firstRow to endRow of source in dest; the sums of each channel over
+        //           the rows of the window around the current row are kept per column, adding the row that
+        //           enters the window and subtracting the one that leaves it as the window moves down
+        private void blurRows() {
+            int[] countX = getWindowCounts(width, radius);
+            int[] red = new int[width];
+            int[] green = new int[width];
+            int[] blue = new int[width];
+
+            int windowBottom = Math.min(firstRow + radius, height - 1);
+            for (int y = Math.max(firstRow - radius, 0); y <= windowBottom; y++)
+                addRowSums(y, 1, red, green, blue);
+
+            long[] reciprocals = new long[width];
+            int reciprocalsCountY = 0;
+
+            for (int y = firstRow; y < endRow; y++) {
+                int countY = Math.min(y + radius, height - 1) - Math.max(y - radius, 0) + 1;
+                int row = y * width;
+
+                // The window counts only change near the edges, so the reciprocals are rarely recomputed
+                if (countY != reciprocalsCountY) {
+                    for (int x = 0; x < width; x++)
+                        reciprocals[x] = getReciprocal(countX[x] * countY);
+                    reciprocalsCountY = countY;
+                }
+
+                for (int x = 0; x < width; x++) {
+                    long reciprocal = reciprocals[x];
+                    dest[row + x] = 0xFF000000 | (int) ((red[x] * reciprocal) >>> RECIPROCAL_SHIFT) << 16
+                            | (int) ((green[x] * reciprocal) >>> RECIPROCAL_SHIFT) << 8
+                            | (int) ((blue[x] * reciprocal) >>> RECIPROCAL_SHIFT);
+                }
+
+                if (y + radius + 1 < height)
+                    addRowSums(y + radius + 1, 1, red, green, blue);
+                if (y - radius >= 0)
+                    addRowSums(y - radius, -1, red, green, blue);
+            }
+        }
+
+        // MODIFIES: red, green, blue
+        // EFFECTS:  adds sign times the sums of each channel over the window of given radius around each pixel
+        //           of given row of source to red, green and blue
+        private void addRowSums(int y, int sign, int[] red, int[] green, int[] blue) {
+            int row = y * width;
+            int redSum = 0;
+            int greenSum = 0;
+            int blueSum = 0;
+
+            int windowRight = Math.min(radius, width - 1);
+            for (int x = 0; x <= windowRight; x++) {
+                int rgb = source[row + x];
+                redSum += (rgb >> 16) & 0xFF;
+                greenSum += (rgb >> 8) & 0xFF;
+                blueSum += rgb & 0xFF;
+            }
+
+            for (int x = 0; x < width; x++) {
+                red[x] += sign * redSum;
+                green[x] += sign * greenSum;
+                blue[x] += sign * blueSum;
+
+                if (x + radius + 1 < width) {
+                    int rgb = source[row + x + radius + 1];
+                    redSum += (rgb >> 16) & 0xFF;
+                    greenSum += (rgb >> 8) & 0xFF;
+                    blueSum += rgb & 0xFF;
+                }
+                if (x - radius >= 0) {
+                    int rgb = source[row + x - radius];
+                    redSum -= (rgb >> 16) & 0xFF;
+                    greenSum -= (rgb >> 8) & 0xFF;
+                    blueSum -= rgb & 0xFF;
+                }
+            }
+        }
+    }
+}
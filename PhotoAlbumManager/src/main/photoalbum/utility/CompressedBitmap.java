@@ -0,0 +1,445 @@
+package photoalbum.utility;
+
+import java.util.Arrays;
+
+// A set of non-negative ints stored as a compressed bitmap, in the style of Roaring bitmaps: values are grouped by
+// their high 16 bits, and the low 16 bits of the values of each group are held in a container that is a sorted
+// array while the group is sparse and a 65536-bit bitmap once it is dense. Intersections, unions and differences
+// of dense containers are computed a 64-bit word at a time.
+public class CompressedBitmap {
+    private static final int MAX_ARRAY_SIZE = 4096;         // beyond this, a bitmap container is smaller
+    private static final int BITMAP_WORDS = 65536 / 64;
+
+    private char[] keys;                // high 16 bits of the values in each container, in increasing order
+    private Container[] containers;
+    private int size;                   // number of containers
+
+    // EFFECTS: constructs empty bitmap
+    public CompressedBitmap() {
+        keys = new char[4];
+        containers = new Container[4];
+        size = 0;
+    }
+
+    // REQUIRES: value >= 0
+    // MODIFIES: this
+    // EFFECTS:  adds value to this set
+    public void add(int value) {
+        char key = highBits(value);
+        int index = findKey(key);
+
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new Container());
+        }
+
+        containers[index].add(lowBits(value));
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  removes value from this set, if it is there
+    public void remove(int value) {
+        if (value < 0)
+            return;
+
+        int index = findKey(highBits(value));
+        if (index < 0)
+            return;
+
+        Container container = containers[index];
+        container.remove(lowBits(value));
+        if (container.cardinality == 0)
+            removeContainer(index);
+    }
+
+    // EFFECTS: returns true if value is in this set
+    public boolean contains(int value) {
+        if (value < 0)
+            return false;
+
+        int index = findKey(highBits(value));
+        return index >= 0 && containers[index].contains(lowBits(value));
+    }
+
+    // EFFECTS: returns number of values in this set
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++)
+            cardinality += containers[i].cardinality;
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // EFFECTS: returns values in this set, in increasing order
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int count = 0;
+        for (int i = 0; i < size; i++)
+            count = containers[i].copyValues(keys[i] << 16, values, count);
+        return values;
+    }
+
+    // EFFECTS: returns new bitmap holding the values in both this and other
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality > 0)
+                    result.appendContainer(keys[i], container);
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    // EFFECTS: returns new bitmap holding the values in this or other
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.appendContainer(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.appendContainer(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.appendContainer(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    // EFFECTS: returns new bitmap holding the values in this but not in other
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i])
+                j++;
+
+            Container container = j < other.size && other.keys[j] == keys[i]
+                    ? containers[i].andNot(other.containers[j]) : containers[i].copy();
+            if (container.cardinality > 0)
+                result.appendContainer(keys[i], container);
+        }
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedBitmap(" + cardinality() + " values, " + size + " containers)";
+    }
+
+    private static char highBits(int value) {
+        return (char) (value >>> 16);
+    }
+
+    private static char lowBits(int value) {
+        return (char) value;
+    }
+
+    // EFFECTS: returns index of container with given key, or (-(insertion point) - 1) if there is none
+    private int findKey(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  inserts container with given key at given index
+    private void insertContainer(int index, char key, Container container) {
+        ensureCapacity();
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    // REQUIRES: key is greater than the keys of all containers in this
+    // MODIFIES: this
+    // EFFECTS:  adds container with given key after all other containers
+    private void appendContainer(char key, Container container) {
+        ensureCapacity();
+        keys[size] = key;
+        containers[size] = container;
+        size++;
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  removes container at given index
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  makes room for at least one more container
+    private void ensureCapacity() {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * size);
+            containers = Arrays.copyOf(containers, 2 * size);
+        }
+    }
+
+    // The low 16 bits of the values sharing the same high 16 bits: a sorted array of values while there are at
+    // most MAX_ARRAY_SIZE of them (bits is null), otherwise a bitmap (values is null)
+    private static class Container {
+        private char[] values;
+        private long[] bits;
+        private int cardinality;
+
+        // EFFECTS: constructs empty array container
+        Container() {
+            values = new char[4];
+        }
+
+        // EFFECTS: constructs container holding given number of values in given array or bitmap, converting it
+        //          to the representation suited to that number
+        Container(char[] values, long[] bits, int cardinality) {
+            this.values = values;
+            this.bits = bits;
+            this.cardinality = cardinality;
+
+            if (bits != null && cardinality <= MAX_ARRAY_SIZE)
+                toArray();
+        }
+
+        boolean contains(char value) {
+            if (bits != null)
+                return (bits[value >>> 6] & (1L << value)) != 0;
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        // MODIFIES: this
+        // EFFECTS:  adds value to container, converting it to a bitmap when the array becomes too large
+        void add(char value) {
+            if (bits != null) {
+                long word = bits[value >>> 6];
+                long newWord = word | (1L << value);
+                bits[value >>> 6] = newWord;
+                if (newWord != word)
+                    cardinality++;
+                return;
+            }
+
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0)
+                return;
+
+            if (cardinality == MAX_ARRAY_SIZE) {
+                toBitmap();
+                add(value);
+                return;
+            }
+
+            index = -index - 1;
+            if (cardinality == values.length)
+                values = Arrays.copyOf(values, Math.min(2 * cardinality, MAX_ARRAY_SIZE));
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+        }
+
+        // MODIFIES: this
+        // EFFECTS:  removes value from container, converting it to an array when the bitmap becomes sparse
+        void remove(char value) {
+            if (bits != null) {
+                long word = bits[value >>> 6];
+                long newWord = word & ~(1L << value);
+                bits[value >>> 6] = newWord;
+                if (newWord != word && --cardinality <= MAX_ARRAY_SIZE)
+                    toArray();
+                return;
+            }
+
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+        }
+
+        // EFFECTS: returns copy of this container
+        Container copy() {
+            return new Container(values == null ? null : Arrays.copyOf(values, cardinality),
+                    bits == null ? null : bits.clone(), cardinality);
+        }
+
+        // MODIFIES: dest
+        // EFFECTS:  stores values of container, each combined with given high bits, in dest from given index on;
+        //           returns index following the last value stored
+        int copyValues(int highBits, int[] dest, int index) {
+            if (bits == null) {
+                for (int i = 0; i < cardinality; i++)
+                    dest[index++] = highBits | values[i];
+                return index;
+            }
+
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    dest[index++] = highBits | (w << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return index;
+        }
+
+        // EFFECTS: returns new container holding the values in both this and other
+        Container and(Container other) {
+            if (bits != null && other.bits != null) {
+                long[] result = new long[BITMAP_WORDS];
+                int count = 0;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    result[w] = bits[w] & other.bits[w];
+                    count += Long.bitCount(result[w]);
+                }
+                return new Container(null, result, count);
+            }
+
+            // Probe the larger container with the values of the array one
+            Container array = bits == null ? this : other;
+            Container probed = array == this ? other : this;
+            if (array.cardinality > probed.cardinality && probed.bits == null) {
+                Container swap = array;
+                array = probed;
+                probed = swap;
+            }
+
+            char[] result = new char[array.cardinality];
+            int count = 0;
+            for (int i = 0; i < array.cardinality; i++) {
+                if (probed.contains(array.values[i]))
+                    result[count++] = array.values[i];
+            }
+            return new Container(result, null, count);
+        }
+
+        // EFFECTS: returns new container holding the values in this or other
+        Container or(Container other) {
+            if (bits == null && other.bits == null && cardinality + other.cardinality <= MAX_ARRAY_SIZE)
+                return mergeArrays(other);
+
+            long[] result = toBitmapWords();
+            if (other.bits != null) {
+                for (int w = 0; w < BITMAP_WORDS; w++)
+                    result[w] |= other.bits[w];
+            } else {
+                for (int i = 0; i < other.cardinality; i++)
+                    result[other.values[i] >>> 6] |= 1L << other.values[i];
+            }
+            return new Container(null, result, countBits(result));
+        }
+
+        // EFFECTS: returns new container holding the values in this but not in other
+        Container andNot(Container other) {
+            if (bits == null) {
+                char[] result = new char[cardinality];
+                int count = 0;
+                for (int i = 0; i < cardinality; i++) {
+                    if (!other.contains(values[i]))
+                        result[count++] = values[i];
+                }
+                return new Container(result, null, count);
+            }
+
+            long[] result = bits.clone();
+            if (other.bits != null) {
+                for (int w = 0; w < BITMAP_WORDS; w++)
+                    result[w] &= ~other.bits[w];
+            } else {
+                for (int i = 0; i < other.cardinality; i++)
+                    result[other.values[i] >>> 6] &= ~(1L << other.values[i]);
+            }
+            return new Container(null, result, countBits(result));
+        }
+
+        // REQUIRES: this and other are array containers
+        // EFFECTS: returns new array container holding the values in this or other
+        private Container mergeArrays(Container other) {
+            char[] result = new char[cardinality + other.cardinality];
+            int i = 0;
+            int j = 0;
+            int count = 0;
+
+            while (i < cardinality && j < other.cardinality) {
+                if (values[i] < other.values[j]) {
+                    result[count++] = values[i++];
+                } else if (values[i] > other.values[j]) {
+                    result[count++] = other.values[j++];
+                } else {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+            while (i < cardinality)
+                result[count++] = values[i++];
+            while (j < other.cardinality)
+                result[count++] = other.values[j++];
+
+            return new Container(result, null, count);
+        }
+
+        // EFFECTS: returns new array of bitmap words holding the values of this container
+        private long[] toBitmapWords() {
+            if (bits != null)
+                return bits.clone();
+
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++)
+                words[values[i] >>> 6] |= 1L << values[i];
+            return words;
+        }
+
+        // MODIFIES: this
+        // EFFECTS:  converts this array container to a bitmap container
+        private void toBitmap() {
+            bits = toBitmapWords();
+            values = null;
+        }
+
+        // MODIFIES: this
+        // EFFECTS:  converts this bitmap container to an array container
+        private void toArray() {
+            values = new char[Math.max(cardinality, 4)];
+            int count = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    values[count++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            bits = null;
+        }
+
+        private static int countBits(long[] words) {
+            int count = 0;
+            for (long word : words)
+                count += Long.bitCount(word);
+            return count;
+        }
+    }
+}
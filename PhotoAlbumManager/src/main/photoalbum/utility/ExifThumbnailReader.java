@@ -0,0 +1,67 @@
+package photoalbum.utility;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.common.bytesource.ByteSourceFile;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.JpegImageParser;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+// Reads thumbnails from the preview images embedded in the EXIF metadata of jpg files, so that a thumbnail
+// can be shown without decoding the full image; only the marker segments in front of the image data are read
+public class ExifThumbnailReader {
+    private static final double MAX_ASPECT_RATIO_ERROR = 0.05;
+
+    // EFFECTS: returns thumbnail computed from the EXIF preview embedded in given file; returns null if file
+    //          has no preview, the preview cannot be read, is smaller than a thumbnail or does not have the same
+    //          aspect ratio as the full image (e.g. because the camera padded it with black bars)
+    public static Thumbnail readThumbnail(File file) {
+        try {
+            TiffImageMetadata exif = new JpegImageParser().getExifMetadata(new ByteSourceFile(file), null);
+            if (exif == null)
+                return null;
+
+            BufferedImage preview = new JpegImageMetadata(null, exif).getEXIFThumbnail();
+            if (preview == null || !isUsablePreview(file, preview))
+                return null;
+
+            return new Thumbnail(preview);
+        } catch (ImageReadException | IOException | RuntimeException e) {
+            // Files that are not jpg files or have malformed metadata are thumbnailed from the full image
+            return null;
+        }
+    }
+
+    // EFFECTS: returns true if preview is at least as large as a thumbnail and has the aspect ratio of the image
+    //          in given file, whose dimensions are read from the file's header
+    private static boolean isUsablePreview(File file, BufferedImage preview) throws IOException {
+        if (preview.getWidth() < Thumbnail.MAX_WIDTH && preview.getHeight() < Thumbnail.MAX_HEIGHT)
+            return false;
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null)
+                return false;
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext())
+                return false;
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                double imageRatio = (double) reader.getWidth(0) / reader.getHeight(0);
+                double previewRatio = (double) preview.getWidth() / preview.getHeight();
+                return Math.abs(previewRatio / imageRatio - 1) <= MAX_ASPECT_RATIO_ERROR;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
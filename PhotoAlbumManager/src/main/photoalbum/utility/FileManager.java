@@ -10,6 +10,11 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 // File manager - handles interactions with file system
 public class FileManager {
@@ -18,20 +23,35 @@ public class FileManager {
     private static final String FILE_SEPARATOR = System.getProperty("file.separator");
     private static final String PHOTO_FILE_TYPE = ".jpg";
     private static final String PATH_TO_PICS = PROJECT_DIRECTORY_PATH + FILE_SEPARATOR + PICTURES_DIRECTORY;
+    private static final int LOADER_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int SAVER_THREADS = Math.min(4, LOADER_THREADS);
+    private static final int MAX_FAILURES_LISTED = 10;
+    private static final boolean LOAD_IMAGES_LAZILY =
+            Boolean.parseBoolean(System.getProperty("photoalbum.lazyImages", "true"));
 
     private MainFrame mainFrame;
     private PhotoManager photoMan;
     private TagManager tagMan;
+    private String picturesPath;    // directory holding a sub-directory of photos for each album
 
-    // EFFECTS: constructs file manager associated with application's main frame
+    // EFFECTS: constructs file manager associated with application's main frame, for the library in PATH_TO_PICS
     public FileManager(MainFrame mainFrame) {
         this.mainFrame = mainFrame;
         this.photoMan = mainFrame.getPhotoManager();
         this.tagMan = mainFrame.getTagManager();
+        this.picturesPath = PATH_TO_PICS;
+    }
+
+    // EFFECTS: constructs file manager loading photos into given photo and tag managers from the library in given
+    //          pictures directory, without a main frame to show errors in
+    public FileManager(PhotoManager photoMan, TagManager tagMan, String picturesPath) {
+        this.photoMan = photoMan;
+        this.tagMan = tagMan;
+        this.picturesPath = picturesPath;
     }
 
     // MODIFIES: this
-    // EFFECTS:  loads all JPG photos from all albums represented by sub-directories in PATH_TO_PICS directory
+    // EFFECTS:  loads all JPG photos from all albums represented by sub-directories in pictures directory
     public void loadLibrary() {
         try {
             loadAlbums();
@@ -44,14 +64,101 @@ public class FileManager {
         }
     }
 
-    // EFFECTS:  writes description and keywords from all photos in all albums back to corresponding image files
+    // MODIFIES: this
+    // EFFECTS:  loads all JPG photos from all albums represented by sub-directories in pictures directory;
+    //           images are decoded and metadata is read on a pool of LOADER_THREADS worker threads, then
+    //           merged into the library on the calling thread in album name / file name order
+    public void loadLibraryInParallel() {
+        ExecutorService executor = Executors.newFixedThreadPool(LOADER_THREADS);
+
+        try {
+            loadAlbums();
+
+            List<Future<LoadedPhoto>> results = new ArrayList<Future<LoadedPhoto>>();
+            List<File> files = new ArrayList<File>();
+            for (Album album : getAlbumsByName()) {
+                for (final File f : getPhotoFilesForAlbum(album)) {
+                    final Album target = album;
+                    files.add(f);
+                    results.add(executor.submit(new Callable<LoadedPhoto>() {
+                        @Override
+                        public LoadedPhoto call() {
+                            return loadPhotoFromFile(target, f);
+                        }
+                    }));
+                }
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                LoadedPhoto loaded = getLoadedPhoto(results.get(i), files.get(i));
+                if (loaded != null) {
+                    applyMetadata(loaded.file, loaded.photo, loaded.records);
+                    loaded.album.addPhoto(loaded.photo);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // EFFECTS:  writes description and keywords from all dirty photos in all albums back to corresponding image
+    //           files, as saveMetadata does; displays a single error message listing the albums and files whose
+    //           metadata couldn't be written
     public void writeMetadataToFile() {
-        for (Album album : photoMan.getAlbums()) {
-            try {
-                writeMetadataForAlbum(album);
-            } catch (IOException e) {
-                PopUps.errorPopup(mainFrame, "Couldn't write metadata for images in album: " + album.getName());
+        List<String> failures = saveMetadata();
+
+        if (!failures.isEmpty())
+            PopUps.errorPopup(mainFrame, describeFailures(failures));
+    }
+
+    // EFFECTS:  writes description and keywords from all dirty photos in all albums back to corresponding image
+    //           files on a pool of SAVER_THREADS worker threads, marking each photo clean once its file is written;
+    //           returns the albums and files, relative to pictures directory, whose metadata couldn't be written
+    public List<String> saveMetadata() {
+        ExecutorService executor = Executors.newFixedThreadPool(SAVER_THREADS);
+        List<String> failures = new ArrayList<String>();
+
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            List<String> paths = new ArrayList<String>();
+            for (Album album : getAlbumsByName()) {
+                try {
+                    submitMetadataWritesForAlbum(album, executor, results, paths);
+                } catch (IOException e) {
+                    failures.add("album " + album.getName());
+                }
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException e) {
+                    failures.add(paths.get(i));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failures.add("files not yet written when saving was interrupted");
+                    break;
+                }
             }
+        } finally {
+            executor.shutdown();
+        }
+
+        return failures;
+    }
+
+    // EFFECTS: returns photo loaded from given file by given worker task, or null if the task failed to load it,
+    //          so that a file whose decoding throws is skipped like one holding no image
+    private static LoadedPhoto getLoadedPhoto(Future<LoadedPhoto> result, File file) throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            System.out.println("Could not load file: " + file.getName());
+            return null;
         }
     }
 
@@ -61,8 +168,7 @@ public class FileManager {
     public void loadFromFilesToAlbum(File[] files, Album album) {
         for (File file : files) {
             try {
-                importPhotoFileToAlbumDirectory(file, album);
-                addPhotoFromFileToAlbum(album, file);
+                addPhotoFromFileToAlbum(album, importPhotoFileToAlbumDirectory(file, album));
             } catch (IOException e) {
                 PopUps.errorPopup(mainFrame, "File could not be loaded: " + file.getName());
             } catch (DuplicateFileException e) {
@@ -72,23 +178,25 @@ public class FileManager {
     }
 
     // MODIFIES: this
-    // EFFECTS:  load albums into library; each directory in PATH_TO_PICS is assumed to represent an album
+    // EFFECTS:  load albums into library; each directory in pictures directory is assumed to represent an album;
+    //           albums already in the library are kept and their photos loaded into them
     private void loadAlbums() throws IOException {
-        Path dir = FileSystems.getDefault().getPath(PATH_TO_PICS);
+        Path dir = FileSystems.getDefault().getPath(picturesPath);
         DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
         for (Path entry : stream) {
             File f = entry.toFile();
-            if (f.isDirectory()) {
-                Album newAlbum = new Album(entry.getName(entry.getNameCount() - 1).toString());
+            String name = entry.getName(entry.getNameCount() - 1).toString();
+            if (f.isDirectory() && photoMan.findAlbum(name) == null) {
+                Album newAlbum = new Album(name);
                 photoMan.addAlbum(newAlbum);
             }
         }
     }
 
     // MODIFIES: this, album
-    // EFFECTS:  adds photos from all jpg files found in PATH_TO_PICS/album.getName() to album
+    // EFFECTS:  adds photos from all jpg files found in pictures directory/album.getName() to album
     private void loadPhotosForAlbum(Album album) throws IOException {
-        Path dir = FileSystems.getDefault().getPath(PATH_TO_PICS + FILE_SEPARATOR + album.getName());
+        Path dir = FileSystems.getDefault().getPath(picturesPath + FILE_SEPARATOR + album.getName());
         DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
 
         for (Path entry : stream) {
@@ -99,6 +207,35 @@ public class FileManager {
         }
     }
 
+    // EFFECTS: returns albums in library, ordered by name
+    private List<Album> getAlbumsByName() {
+        List<Album> albums = new ArrayList<Album>(photoMan.getAlbums());
+        Collections.sort(albums, new Comparator<Album>() {
+            @Override
+            public int compare(Album a, Album b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return albums;
+    }
+
+    // EFFECTS: returns all jpg files found in pictures directory/album.getName(), ordered by file name
+    private List<File> getPhotoFilesForAlbum(Album album) throws IOException {
+        Path dir = FileSystems.getDefault().getPath(picturesPath + FILE_SEPARATOR + album.getName());
+        List<File> files = new ArrayList<File>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path entry : stream) {
+                File f = entry.toFile();
+                if (f.isFile() && isJPEG(f))
+                    files.add(f);
+            }
+        }
+
+        Collections.sort(files);
+        return files;
+    }
+
     // EFFECTS: returns true if file has a PHOTO_FILE_TYPE extension, false otherwise
     private boolean isJPEG(File file) {
         if (!file.isFile())
@@ -115,6 +252,20 @@ public class FileManager {
     //           if successful, and adds photo to album;
     //           otherwise, silently returns
     private void addPhotoFromFileToAlbum(Album album, File file) {
+        LoadedPhoto loaded = loadPhotoFromFile(album, file);
+        if (loaded != null) {
+            applyMetadata(loaded.file, loaded.photo, loaded.records);
+            album.addPhoto(loaded.photo);
+        }
+    }
+
+    // EFFECTS: attempts to create photo from image found in given file and reads its IPTC records,
+    //          without modifying the library; returns null if image cannot be loaded;
+    //          the file is opened once: unless LOAD_IMAGES_LAZILY is set, the same bytes are used to decode the
+    //          image and to parse its metadata, otherwise only the marker segments at the start of a jpg file are
+    //          read, and used to check that the image is readable and to parse its metadata
+    //          NOTE: safe to call from worker threads
+    private static LoadedPhoto loadPhotoFromFile(Album album, File file) {
         String fileName = file.getName();
 
         int indexOfDot = fileName.lastIndexOf('.');
@@ -122,19 +273,63 @@ public class FileManager {
             fileName = fileName.substring(0, indexOfDot);
 
         Photo p = new Photo(fileName);
-        if(p.loadPhoto(file)) {
-            loadMetadata(file, p);
-            album.addPhoto(p);
+
+        if (LOAD_IMAGES_LAZILY) {
+            byte[] header = readHeader(file);
+            if (header == null) {
+                // Not a jpg, so the file holds no IPTC records to read
+                if (!p.loadPhotoLazily(file))
+                    return null;
+
+                return new LoadedPhoto(album, file, p, null);
+            }
+
+            if (!p.loadPhotoLazily(file, header))
+                return null;
+
+            return new LoadedPhoto(album, file, p, readMetadata(header));
+        }
+
+        byte[] contents;
+        try {
+            contents = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (!p.loadPhoto(file, contents))
+            return null;
+
+        return new LoadedPhoto(album, file, p, readMetadata(contents));
+    }
+
+    // EFFECTS: returns the marker segments at the start of given jpg file or null if they cannot be read
+    private static byte[] readHeader(File f) {
+        try {
+            return JpgIptcRecordReader.readHeader(f);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // EFFECTS: returns list of IPTC records read from given contents of a file or null if metadata cannot be read
+    private static List<IptcRecord> readMetadata(byte[] contents) {
+        try {
+            return JpgIptcRecordReader.readIptcRecords(contents);
+        } catch (Exception e) {
+            return null;
         }
     }
 
     // MODIFIES: this, photo
-    // EFFECTS:  loads metadata (description, creation date and keywords) from given file and adds it to photo;
+    // EFFECTS:  adds description, creation date and keywords from given IPTC records (read from file f) to photo;
     //           sets description to "", creation date to current date/time and keywords to empty set, if
-    //           metadata cannot be read
-    private void loadMetadata(File f, Photo photo) {
+    //           records is null or cannot be interpreted; photo is then marked clean
+    private void applyMetadata(File f, Photo photo, List<IptcRecord> records) {
         try {
-            List<IptcRecord> records = JpgIptcRecordReader.readIptcRecords(f);
+            if (records == null)
+                throw new IOException("Could not read metadata");
+
             photo.setDescription(findDescription(records));
             photo.setDateCreated(findCreationDate(records));
             addTags(records, photo);
@@ -143,6 +338,7 @@ public class FileManager {
             photo.setDescription("");
             photo.setDateCreated(new Date());
         }
+        photo.markClean();
     }
 
     // EFFECTS: returns description from given list of IPTC records or
@@ -185,44 +381,58 @@ public class FileManager {
         }
     }
 
-    // EFFECTS: write metadata for all photos found in given album back to corresponding files;
-    //          displays error message if metadata cannot be written to a particular file
-    private void writeMetadataForAlbum(Album album) throws IOException {
-        Path dir = FileSystems.getDefault().getPath(PATH_TO_PICS + FILE_SEPARATOR + album.getName());
-        DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
-
-        for (Path entry : stream) {
-            File f = entry.toFile();
-            if (f.isFile()) {
-                String fileName = entry.getName(entry.getNameCount() - 1).toString();
-                int indexOfDot = fileName.lastIndexOf('.');
-                if (indexOfDot >= 0)
-                    fileName = fileName.substring(0, indexOfDot);
-
-                Photo photo = findPhotoNamed(album, fileName);
-
-                if (photo != null) {
-                    String description = photo.getDescription();
-                    List<String> keywords = getKeywordsForPhoto(photo);
-                    try {
+    // MODIFIES: results, paths
+    // EFFECTS:  submits to executor a task for each dirty photo in given album that writes the photo's current
+    //           metadata to its file and marks it clean, adding the task's result to results and the path of the
+    //           file, relative to pictures directory, to paths; each task throws if the file can't be written
+    private void submitMetadataWritesForAlbum(Album album, ExecutorService executor, List<Future<Void>> results,
+                                              List<String> paths) throws IOException {
+        if (!hasDirtyPhoto(album))
+            return;
+
+        for (final File f : getPhotoFilesForAlbum(album)) {
+            String fileName = f.getName();
+            final Photo photo = album.findPhoto(fileName.substring(0, fileName.lastIndexOf('.')));
+
+            if (photo != null && photo.isDirty()) {
+                // The metadata is read on this thread, so that workers only touch the photo to mark it clean
+                final String description = photo.getDescription();
+                final List<String> keywords = getKeywordsForPhoto(photo);
+
+                paths.add(album.getName() + FILE_SEPARATOR + fileName);
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
                         JpgIptcRecordWriter.writeMetadata(f, description, keywords);
-                    } catch (Exception e) {
-                        PopUps.errorPopup(mainFrame, "Could not write metadata to file: " + fileName);
+                        photo.markClean();
+                        return null;
                     }
-                }
+                }));
             }
         }
     }
 
-    // EFFECTS: returns photo in album with given name or null if no such photo found
-    private Photo findPhotoNamed(Album album, String fileName) {
-        Set<Photo> photos = album.getPhotos();
-        for (Photo photo : photos) {
-            if (photo.getName().equals(fileName))
-                return photo;
+    // EFFECTS: returns error message listing given failures, at most MAX_FAILURES_LISTED of them
+    public static String describeFailures(List<String> failures) {
+        StringBuilder message = new StringBuilder("Couldn't write metadata for " + failures.size()
+                + (failures.size() == 1 ? " item:" : " items:"));
+
+        for (int i = 0; i < failures.size() && i < MAX_FAILURES_LISTED; i++)
+            message.append("\n").append(failures.get(i));
+        if (failures.size() > MAX_FAILURES_LISTED)
+            message.append("\n... and ").append(failures.size() - MAX_FAILURES_LISTED).append(" more");
+
+        return message.toString();
+    }
+
+    // EFFECTS: returns true if any photo in given album is dirty
+    private static boolean hasDirtyPhoto(Album album) {
+        for (Photo photo : album.getPhotos()) {
+            if (photo.isDirty())
+                return true;
         }
 
-        return null;
+        return false;
     }
 
     // EFFECTS: returns list of keywords (tags) for given photo;
@@ -244,10 +454,11 @@ public class FileManager {
         }
     }
 
-    // EFFECTS:  copies given file to directory PATH_TO_PICS/album.getName()/;
-    //           throws DuplicateFileException if file of given name already exists in target directory
-    private void importPhotoFileToAlbumDirectory(File file, Album album) throws IOException, DuplicateFileException {
-        File destination = new File("photos" + FILE_SEPARATOR + album.getName()
+    // EFFECTS:  copies given file to the album's directory in the pictures directory, unless it is already there,
+    //           and returns the file in the album's directory;
+    //           throws DuplicateFileException if another file of given name already exists in target directory
+    private File importPhotoFileToAlbumDirectory(File file, Album album) throws IOException, DuplicateFileException {
+        File destination = new File(picturesPath + FILE_SEPARATOR + album.getName()
                 + FILE_SEPARATOR + file.getName());
 
         // If the file isn't in the destination folder with the expected
@@ -262,6 +473,22 @@ public class FileManager {
                 throw new DuplicateFileException(file.getName());
             }
         }
+        return destination;
     }
-}
 
+    // A photo loaded from file by a worker thread, waiting to be merged into the library
+    private static class LoadedPhoto {
+        private final Album album;
+        private final File file;
+        private final Photo photo;
+        private final List<IptcRecord> records;
+
+        // EFFECTS: constructs loaded photo for given album, file, photo and IPTC records (null if unreadable)
+        LoadedPhoto(Album album, File file, Photo photo, List<IptcRecord> records) {
+            this.album = album;
+            this.file = file;
+            this.photo = photo;
+            this.records = records;
+        }
+    }
+}
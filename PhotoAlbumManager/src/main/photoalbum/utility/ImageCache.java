@@ -0,0 +1,158 @@
+package photoalbum.utility;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Shared cache of decoded images, keyed by the file they were loaded from; when the pixel data held by the
+// cache exceeds its byte budget, least-recently-used images are evicted (and reloaded from file when needed again)
+public class ImageCache {
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+    private static final long DEFAULT_BUDGET_MEGABYTES =
+            Long.parseLong(System.getProperty("photoalbum.imageCacheMB", "128"));
+
+    private static final ImageCache SHARED_CACHE = new ImageCache(DEFAULT_BUDGET_MEGABYTES * BYTES_PER_MEGABYTE);
+
+    // Loads an image from file on a cache miss
+    public interface ImageLoader {
+        // EFFECTS: returns image loaded from given file, or null if image cannot be loaded
+        BufferedImage load(File file);
+    }
+
+    private Map<File, BufferedImage> images;
+    private long budget;
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // REQUIRES: budget >= 0
+    // EFFECTS: constructs empty cache holding at most budget bytes of pixel data
+    public ImageCache(long budget) {
+        this.budget = budget;
+        images = new LinkedHashMap<File, BufferedImage>(16, 0.75f, true);
+    }
+
+    // EFFECTS: returns the cache shared by all photos
+    public static ImageCache getSharedCache() {
+        return SHARED_CACHE;
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  returns image cached for given file; on a miss, loads image using loader and caches it
+    //           (unless it is larger than the whole budget); returns null if image cannot be loaded
+    public BufferedImage get(File file, ImageLoader loader) {
+        synchronized (this) {
+            BufferedImage image = images.get(file);
+            if (image != null) {
+                hits++;
+                return image;
+            }
+            misses++;
+        }
+
+        // Decode outside the lock so that other threads can use the cache in the meantime
+        BufferedImage loaded = loader.load(file);
+        if (loaded == null)
+            return null;
+
+        synchronized (this) {
+            BufferedImage image = images.get(file);
+            if (image != null)
+                return image;
+
+            put(file, loaded);
+            return loaded;
+        }
+    }
+
+    // EFFECTS: returns image cached for given file, or null if it is not cached; does not load anything
+    public synchronized BufferedImage getIfPresent(File file) {
+        return images.get(file);
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  caches given image for given file, replacing any image cached for it, unless image
+    //           is larger than the whole budget; evicts least-recently-used images to stay within budget
+    public synchronized void put(File file, BufferedImage image) {
+        remove(file);
+
+        long imageSize = sizeOf(image);
+        if (imageSize > budget)
+            return;
+
+        images.put(file, image);
+        size += imageSize;
+        evictToBudget();
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  removes image cached for given file, if any
+    public synchronized void remove(File file) {
+        BufferedImage image = images.remove(file);
+        if (image != null)
+            size -= sizeOf(image);
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  removes all images from cache
+    public synchronized void clear() {
+        images.clear();
+        size = 0;
+    }
+
+    // REQUIRES: budget >= 0
+    // MODIFIES: this
+    // EFFECTS:  sets byte budget of cache, evicting least-recently-used images if necessary
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        evictToBudget();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    // EFFECTS: returns number of bytes of pixel data currently held by cache
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    // EFFECTS: returns number of bytes of pixel data held by given image
+    public static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ImageCache(" + images.size() + " images, " + size + "/" + budget + " bytes, "
+                + hits + " hits, " + misses + " misses, " + evictions + " evictions)";
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  evicts least-recently-used images until size is within budget
+    private void evictToBudget() {
+        Iterator<BufferedImage> iterator = images.values().iterator();
+        while (size > budget && iterator.hasNext()) {
+            size -= sizeOf(iterator.next());
+            iterator.remove();
+            evictions++;
+        }
+    }
+}
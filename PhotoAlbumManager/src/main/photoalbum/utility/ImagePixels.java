@@ -0,0 +1,84 @@
+package photoalbum.utility;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+// Gives access to the pixels of an image as an array of packed ARGB values, one per pixel, row by row;
+// for TYPE_INT_RGB and TYPE_INT_ARGB images the array backing the image is used, so no pixels are copied
+public class ImagePixels {
+    private static final int[] RGB_MASKS = {0xFF0000, 0xFF00, 0xFF};
+    private static final int[] ARGB_MASKS = {0xFF0000, 0xFF00, 0xFF, 0xFF000000};
+
+    // EFFECTS: returns pixels of given image as packed ARGB values; if the image can be accessed directly,
+    //          this is the array backing the image, so changes to the array change the image; otherwise
+    //          it is a copy, which must be written back with setPixels; the alpha byte of pixels of
+    //          TYPE_INT_RGB images is undefined and must be ignored
+    public static int[] getPixels(BufferedImage image) {
+        if (isDirectlyAccessible(image))
+            return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    // REQUIRES: pixels was returned by getPixels for given image, or has the same size
+    // MODIFIES: image
+    // EFFECTS:  stores given pixels in image; does nothing if pixels is the array backing the image
+    public static void setPixels(BufferedImage image, int[] pixels) {
+        if (isDirectlyAccessible(image)
+                && pixels == ((DataBufferInt) image.getRaster().getDataBuffer()).getData())
+            return;
+
+        int width = image.getWidth();
+        image.setRGB(0, 0, width, image.getHeight(), pixels, 0, width);
+    }
+
+    // REQUIRES: pixels.length == image.getWidth() * image.getHeight()
+    // EFFECTS: returns new image of the same size and colour model as given image, holding given pixels; for
+    //          TYPE_INT_RGB and TYPE_INT_ARGB images the new image is backed by given array, so no pixels are copied
+    //          and changes to the array change the new image
+    public static BufferedImage createCompatibleImage(BufferedImage image, int[] pixels) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int type = image.getType();
+
+        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
+            boolean hasAlpha = type == BufferedImage.TYPE_INT_ARGB;
+            ColorModel colorModel = hasAlpha ? ColorModel.getRGBdefault()
+                    : new DirectColorModel(24, RGB_MASKS[0], RGB_MASKS[1], RGB_MASKS[2]);
+            WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length), width,
+                    height, width, hasAlpha ? ARGB_MASKS : RGB_MASKS, null);
+            return new BufferedImage(colorModel, raster, false, null);
+        }
+
+        ColorModel colorModel = image.getColorModel();
+        BufferedImage copy = new BufferedImage(colorModel, image.getRaster().createCompatibleWritableRaster(),
+                colorModel.isAlphaPremultiplied(), null);
+        setPixels(copy, pixels);
+        return copy;
+    }
+
+    // EFFECTS: returns true if image stores each pixel as packed, non-premultiplied ARGB or RGB in a single int,
+    //          with no padding between rows, so that its backing array can be used as is
+    private static boolean isDirectlyAccessible(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB)
+            return false;
+
+        Raster raster = image.getRaster();
+        if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+                || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                || raster.getDataBuffer().getOffset() != 0)
+            return false;
+
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        return sampleModel.getScanlineStride() == image.getWidth()
+                && raster.getDataBuffer().getSize() == image.getWidth() * image.getHeight();
+    }
+}
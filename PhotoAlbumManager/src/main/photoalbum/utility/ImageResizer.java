@@ -0,0 +1,155 @@
+package photoalbum.utility;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+// Resizes images working directly on the int[] rasters of TYPE_INT_RGB images: large reductions are done by
+// repeatedly halving the image (averaging 2x2 blocks), then a single bilinear pass produces the exact target size
+public class ImageResizer {
+    private static final int ONE = 256;     // fixed-point weight of 1.0 used for interpolation
+
+    // EFFECTS: returns a new TYPE_INT_RGB image holding given image resized to given width and height; if image
+    //          already has that size, returns a copy of it, so the result never shares pixels with image
+    public static BufferedImage resize(Image image, int width, int height) {
+        BufferedImage current = toIntRgb(image);
+
+        while (current.getWidth() >= 2 * width && current.getHeight() >= 2 * height)
+            current = halve(current);
+
+        if (current.getWidth() == width && current.getHeight() == height)
+            return current == image ? copyOf(current) : current;
+
+        return resizeBilinear(current, width, height);
+    }
+
+    // EFFECTS: returns given image if it is a TYPE_INT_RGB image, otherwise a TYPE_INT_RGB copy of it
+    public static BufferedImage toIntRgb(Image image) {
+        if (image instanceof BufferedImage && ((BufferedImage) image).getType() == BufferedImage.TYPE_INT_RGB)
+            return (BufferedImage) image;
+
+        BufferedImage copy = new BufferedImage(image.getWidth(null), image.getHeight(null),
+                BufferedImage.TYPE_INT_RGB);
+        Graphics g = copy.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+
+    // REQUIRES: image is a TYPE_INT_RGB image
+    // EFFECTS: returns a TYPE_INT_RGB copy of given image
+    private static BufferedImage copyOf(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        image.copyData(copy.getRaster());
+        return copy;
+    }
+
+    // REQUIRES: image is a TYPE_INT_RGB image
+    // EFFECTS: returns the pixel array backing given image
+    static int[] getPixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    // REQUIRES: image is a TYPE_INT_RGB image at least 2 pixels wide and high
+    // EFFECTS: returns image of half the width and height of given image, each pixel being the average
+    //          of a 2x2 block of pixels in image
+    private static BufferedImage halve(BufferedImage image) {
+        int srcWidth = image.getWidth();
+        int width = srcWidth / 2;
+        int height = image.getHeight() / 2;
+        int[] src = getPixels(image);
+
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] dest = getPixels(result);
+
+        for (int y = 0; y < height; y++) {
+            int row0 = 2 * y * srcWidth;
+            int row1 = row0 + srcWidth;
+            int out = y * width;
+
+            for (int x = 0; x < width; x++) {
+                int a = src[row0 + 2 * x];
+                int b = src[row0 + 2 * x + 1];
+                int c = src[row1 + 2 * x];
+                int d = src[row1 + 2 * x + 1];
+
+                int red = (((a >> 16) & 0xFF) + ((b >> 16) & 0xFF) + ((c >> 16) & 0xFF) + ((d >> 16) & 0xFF) + 2) >> 2;
+                int green = (((a >> 8) & 0xFF) + ((b >> 8) & 0xFF) + ((c >> 8) & 0xFF) + ((d >> 8) & 0xFF) + 2) >> 2;
+                int blue = ((a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF) + 2) >> 2;
+
+                dest[out + x] = (red << 16) | (green << 8) | blue;
+            }
+        }
+
+        return result;
+    }
+
+    // REQUIRES: image is a TYPE_INT_RGB image
+    // EFFECTS: returns given image resized to given width and height by bilinear interpolation
+    private static BufferedImage resizeBilinear(BufferedImage image, int width, int height) {
+        int srcWidth = image.getWidth();
+        int srcHeight = image.getHeight();
+        int[] src = getPixels(image);
+
+        // Source columns and weights are the same for every row, so they are computed once
+        int[] x0 = new int[width];
+        int[] x1 = new int[width];
+        int[] xWeight = new int[width];
+        computeSamples(srcWidth, width, x0, x1, xWeight);
+
+        int[] y0 = new int[height];
+        int[] y1 = new int[height];
+        int[] yWeight = new int[height];
+        computeSamples(srcHeight, height, y0, y1, yWeight);
+
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] dest = getPixels(result);
+
+        for (int y = 0; y < height; y++) {
+            int row0 = y0[y] * srcWidth;
+            int row1 = y1[y] * srcWidth;
+            int wy = yWeight[y];
+            int out = y * width;
+
+            for (int x = 0; x < width; x++) {
+                int wx = xWeight[x];
+                int a = src[row0 + x0[x]];
+                int b = src[row0 + x1[x]];
+                int c = src[row1 + x0[x]];
+                int d = src[row1 + x1[x]];
+
+                int red = interpolate((a >> 16) & 0xFF, (b >> 16) & 0xFF, (c >> 16) & 0xFF, (d >> 16) & 0xFF, wx, wy);
+                int green = interpolate((a >> 8) & 0xFF, (b >> 8) & 0xFF, (c >> 8) & 0xFF, (d >> 8) & 0xFF, wx, wy);
+                int blue = interpolate(a & 0xFF, b & 0xFF, c & 0xFF, d & 0xFF, wx, wy);
+
+                dest[out + x] = (red << 16) | (green << 8) | blue;
+            }
+        }
+
+        return result;
+    }
+
+    // MODIFIES: index0, index1, weight
+    // EFFECTS:  for each of the destLength destination samples, stores the two neighbouring source samples and the
+    //           weight (out of ONE) of the second, aligning the centres of source and destination samples
+    private static void computeSamples(int srcLength, int destLength, int[] index0, int[] index1, int[] weight) {
+        double scale = (double) srcLength / destLength;
+
+        for (int i = 0; i < destLength; i++) {
+            double position = Math.max(0, (i + 0.5) * scale - 0.5);
+            int lower = Math.min((int) position, srcLength - 1);
+
+            index0[i] = lower;
+            index1[i] = Math.min(lower + 1, srcLength - 1);
+            weight[i] = (int) Math.round((position - lower) * ONE);
+        }
+    }
+
+    // EFFECTS: returns channel value interpolated between top-left a, top-right b, bottom-left c and bottom-right d
+    //          with horizontal weight wx and vertical weight wy (each out of ONE)
+    private static int interpolate(int a, int b, int c, int d, int wx, int wy) {
+        int top = a * (ONE - wx) + b * wx;
+        int bottom = c * (ONE - wx) + d * wx;
+        return (top * (ONE - wy) + bottom * wy + ONE * ONE / 2) / (ONE * ONE);
+    }
+}
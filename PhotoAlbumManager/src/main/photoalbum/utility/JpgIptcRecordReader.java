@@ -2,32 +2,269 @@ package photoalbum.utility;
 
 
 import org.apache.commons.imaging.ImageReadException;
-import org.apache.commons.imaging.Imaging;
-import org.apache.commons.imaging.common.ImageMetadata;
-import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
-import org.apache.commons.imaging.formats.jpeg.JpegPhotoshopMetadata;
 import org.apache.commons.imaging.formats.jpeg.iptc.IptcRecord;
+import org.apache.commons.imaging.formats.jpeg.iptc.IptcType;
+import org.apache.commons.imaging.formats.jpeg.iptc.IptcTypes;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-// Reads IPTC records from jpeg files
-class JpgIptcRecordReader {
+// Reads IPTC records from jpeg files; only the marker segments in front of the image data are read
+// (reading stops at the Start-Of-Scan marker) and only the caption, creation date and keywords datasets are decoded
+public class JpgIptcRecordReader {
+    private static final int BUFFER_SIZE = 8 * 1024;
 
-    // EFFECTS: returns list of IPTC records read from given file's metadata;
-    //          throws ImageReadException if jpg metadata cannot be read from file;
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int SOI_MARKER = 0xD8;
+    private static final int EOI_MARKER = 0xD9;
+    private static final int SOS_MARKER = 0xDA;
+    private static final int APP13_MARKER = 0xED;
+    private static final int TEM_MARKER = 0x01;
+    private static final int RST0_MARKER = 0xD0;
+    private static final int RST7_MARKER = 0xD7;
+
+    private static final byte[] PHOTOSHOP_IDENTIFIER = "Photoshop 3.0\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] RESOURCE_SIGNATURE = "8BIM".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int IPTC_RESOURCE_ID = 0x0404;
+
+    private static final int DATASET_TAG_MARKER = 0x1C;
+    private static final int ENVELOPE_RECORD = 1;
+    private static final int APPLICATION_RECORD = 2;
+    private static final int CODED_CHARACTER_SET = 90;
+    private static final byte[] UTF8_CHARACTER_SET = {0x1B, 0x25, 0x47};   // ESC % G
+
+    // EFFECTS: returns list of caption, creation date and keyword IPTC records read from given file's metadata;
+    //          throws ImageReadException if file is not a jpg file or its metadata is malformed;
     //          throws IOException if file cannot be read
-    static List<IptcRecord> readIptcRecords(File file) throws IOException, ImageReadException {
-        final ImageMetadata metadata = Imaging.getMetadata(file);
+    public static List<IptcRecord> readIptcRecords(File file) throws IOException, ImageReadException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            return readIptcRecords(in);
+        }
+    }
+
+    // EFFECTS: returns list of caption, creation date and keyword IPTC records read from metadata in given
+    //          contents of a jpg file;
+    //          throws ImageReadException if contents are not a jpg file or its metadata is malformed;
+    //          throws IOException if contents cannot be read
+    public static List<IptcRecord> readIptcRecords(byte[] contents) throws IOException, ImageReadException {
+        return readIptcRecords(new ByteArrayInputStream(contents));
+    }
+
+    // EFFECTS: returns the start of given jpg file: its marker segments up to and including the Start-Of-Scan
+    //          segment, from which both the IPTC records and the size of the image can be read without reading
+    //          the image data;
+    //          throws ImageReadException if file is not a jpg file or its marker segments are malformed;
+    //          throws IOException if file cannot be read
+    public static byte[] readHeader(File file) throws IOException, ImageReadException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                BUFFER_SIZE))) {
+            ByteArrayOutputStream header = new ByteArrayOutputStream(BUFFER_SIZE);
+
+            if (in.readUnsignedByte() != MARKER_PREFIX || in.readUnsignedByte() != SOI_MARKER)
+                throw new ImageReadException("Not a jpg file");
+            header.write(MARKER_PREFIX);
+            header.write(SOI_MARKER);
+
+            while (true) {
+                int marker = readMarker(in);
+                header.write(MARKER_PREFIX);
+                header.write(marker);
+
+                if (marker == EOI_MARKER)
+                    return header.toByteArray();
+
+                if (marker == TEM_MARKER || (marker >= RST0_MARKER && marker <= RST7_MARKER))
+                    continue;
+
+                int length = in.readUnsignedShort();
+                if (length < 2)
+                    throw new ImageReadException("Invalid jpg segment length");
+
+                byte[] segment = new byte[length - 2];
+                in.readFully(segment);
+                header.write(length >> 8);
+                header.write(length);
+                header.write(segment);
 
-        if (metadata instanceof JpegImageMetadata) {
-            final JpegImageMetadata jpegMetadata = (JpegImageMetadata) metadata;
+                if (marker == SOS_MARKER)
+                    return header.toByteArray();
+            }
+        }
+    }
+
+    // EFFECTS: returns list of caption, creation date and keyword IPTC records found in the APP13 segments
+    //          read from given jpg stream, stopping at the start of the image data
+    private static List<IptcRecord> readIptcRecords(InputStream stream) throws IOException, ImageReadException {
+        DataInputStream in = new DataInputStream(stream);
+        List<IptcRecord> records = new ArrayList<IptcRecord>();
+
+        if (in.readUnsignedByte() != MARKER_PREFIX || in.readUnsignedByte() != SOI_MARKER)
+            throw new ImageReadException("Not a jpg file");
+
+        while (true) {
+            int marker = readMarker(in);
+
+            if (marker == SOS_MARKER || marker == EOI_MARKER)
+                return records;
+
+            if (marker == TEM_MARKER || (marker >= RST0_MARKER && marker <= RST7_MARKER))
+                continue;
+
+            int length = in.readUnsignedShort() - 2;
+            if (length < 0)
+                throw new ImageReadException("Invalid jpg segment length");
+
+            if (marker == APP13_MARKER) {
+                byte[] segment = new byte[length];
+                in.readFully(segment);
+                readPhotoshopSegment(segment, records);
+            } else {
+                skipFully(in, length);
+            }
+        }
+    }
+
+    // EFFECTS: returns next marker code in stream, skipping any fill bytes in front of it
+    private static int readMarker(DataInputStream in) throws IOException, ImageReadException {
+        if (in.readUnsignedByte() != MARKER_PREFIX)
+            throw new ImageReadException("Expected jpg marker");
+
+        int marker = in.readUnsignedByte();
+        while (marker == MARKER_PREFIX)
+            marker = in.readUnsignedByte();
+
+        return marker;
+    }
 
-            JpegPhotoshopMetadata photoshopMetadata = jpegMetadata.getPhotoshop();
-            return photoshopMetadata.photoshopApp13Data.getRecords();
+    // EFFECTS: skips exactly n bytes of given stream
+    private static void skipFully(DataInputStream in, int n) throws IOException {
+        while (n > 0) {
+            int skipped = in.skipBytes(n);
+            if (skipped <= 0) {
+                in.readUnsignedByte();      // throws EOFException at end of stream
+                skipped = 1;
+            }
+            n -= skipped;
         }
+    }
+
+    // MODIFIES: records
+    // EFFECTS:  if given APP13 segment holds Photoshop image resources, adds caption, creation date and keyword
+    //           records from its IPTC resource to records; otherwise does nothing
+    private static void readPhotoshopSegment(byte[] segment, List<IptcRecord> records)
+            throws ImageReadException {
+        if (!startsWith(segment, 0, PHOTOSHOP_IDENTIFIER))
+            return;
+
+        int index = PHOTOSHOP_IDENTIFIER.length;
+        while (index + RESOURCE_SIGNATURE.length <= segment.length && startsWith(segment, index, RESOURCE_SIGNATURE)) {
+            index += RESOURCE_SIGNATURE.length;
+
+            int resourceId = readShort(segment, index);
+            index += 2;
+
+            // Resource name is a Pascal string padded to an even length
+            int nameLength = readByte(segment, index);
+            index += ((nameLength + 1) + 1) & ~1;
+
+            int dataLength = readInt(segment, index);
+            index += 4;
+            if (dataLength < 0 || index + dataLength > segment.length)
+                throw new ImageReadException("Invalid Photoshop resource length");
+
+            if (resourceId == IPTC_RESOURCE_ID)
+                readIptcDatasets(segment, index, index + dataLength, records);
+
+            // Resource data is padded to an even length
+            index += (dataLength + 1) & ~1;
+        }
+    }
+
+    // MODIFIES: records
+    // EFFECTS:  adds caption, creation date and keyword records from the IPTC datasets in segment[start, end)
+    //           to records
+    private static void readIptcDatasets(byte[] segment, int start, int end, List<IptcRecord> records)
+            throws ImageReadException {
+        Charset charset = StandardCharsets.ISO_8859_1;
+        int index = start;
+
+        while (index + 5 <= end && readByte(segment, index) == DATASET_TAG_MARKER) {
+            int record = readByte(segment, index + 1);
+            int dataset = readByte(segment, index + 2);
+            int length = readShort(segment, index + 3);
+            index += 5;
+
+            // Extended datasets are not used for text values, so they are skipped
+            if ((length & 0x8000) != 0) {
+                int sizeOfLength = length & 0x7FFF;
+                if (sizeOfLength > 4 || index + sizeOfLength > end)
+                    throw new ImageReadException("Invalid IPTC dataset length");
+
+                length = 0;
+                for (int i = 0; i < sizeOfLength; i++)
+                    length = (length << 8) | readByte(segment, index + i);
+                index += sizeOfLength;
+            }
+
+            if (length < 0 || index + length > end)
+                throw new ImageReadException("Invalid IPTC dataset length");
+
+            if (record == ENVELOPE_RECORD && dataset == CODED_CHARACTER_SET) {
+                byte[] value = Arrays.copyOfRange(segment, index, index + length);
+                charset = Arrays.equals(value, UTF8_CHARACTER_SET) ? StandardCharsets.UTF_8
+                        : StandardCharsets.ISO_8859_1;
+            } else if (record == APPLICATION_RECORD) {
+                IptcType type = findType(dataset);
+                if (type != null)
+                    records.add(new IptcRecord(type, new String(segment, index, length, charset)));
+            }
+
+            index += length;
+        }
+    }
+
+    // EFFECTS: returns the IPTC type read by this reader for given application record dataset number,
+    //          or null if the dataset is not read
+    private static IptcType findType(int dataset) {
+        if (dataset == IptcTypes.CAPTION_ABSTRACT.getType())
+            return IptcTypes.CAPTION_ABSTRACT;
+        if (dataset == IptcTypes.DATE_CREATED.getType())
+            return IptcTypes.DATE_CREATED;
+        if (dataset == IptcTypes.KEYWORDS.getType())
+            return IptcTypes.KEYWORDS;
+        return null;
+    }
+
+    // EFFECTS: returns true if bytes starting at given index in data match given prefix
+    private static boolean startsWith(byte[] data, int index, byte[] prefix) {
+        if (index + prefix.length > data.length)
+            return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[index + i] != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    // EFFECTS: returns unsigned byte at given index in data
+    private static int readByte(byte[] data, int index) throws ImageReadException {
+        if (index >= data.length)
+            throw new ImageReadException("Unexpected end of jpg segment");
+        return data[index] & 0xFF;
+    }
+
+    // EFFECTS: returns unsigned big-endian 16-bit value at given index in data
+    private static int readShort(byte[] data, int index) throws ImageReadException {
+        return (readByte(data, index) << 8) | readByte(data, index + 1);
+    }
 
-        throw new ImageReadException("Could not read metadata from jpg file");
+    // EFFECTS: returns big-endian 32-bit value at given index in data
+    private static int readInt(byte[] data, int index) throws ImageReadException {
+        return (readShort(data, index) << 16) | readShort(data, index + 2);
     }
 }
@@ -2,71 +2,276 @@ package photoalbum.utility;
 
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.ImageWriteException;
-import org.apache.commons.imaging.Imaging;
-import org.apache.commons.imaging.common.ImageMetadata;
-import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
-import org.apache.commons.imaging.formats.jpeg.JpegPhotoshopMetadata;
 import org.apache.commons.imaging.formats.jpeg.iptc.*;
 
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 
-// Writes photo's description and list of keywords into IPTC record data of jpg file
-class JpgIptcRecordWriter {
+// Writes photo's description and list of keywords into IPTC record data of jpg file. Only the marker segments in
+// front of the image data are read; the file is streamed to a temporary file with the new Photoshop APP13 segment,
+// padded to leave room for later changes, which then replaces the file. The file itself is never written: the
+// temporary file is synced to disk before it is atomically renamed over the file, so a crash or a failed write
+// leaves either the old or the new file in place. Callers may opt in to overwriting just the segment's bytes when
+// the new segment fits in the old one (including padding left by a previous write); that avoids copying the image
+// data, but is not atomic, so a crash during it can leave the segment, and so the metadata, corrupted.
+public class JpgIptcRecordWriter {
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int SOI_MARKER = 0xD8;
+    private static final int EOI_MARKER = 0xD9;
+    private static final int SOS_MARKER = 0xDA;
+    private static final int APP0_MARKER = 0xE0;
+    private static final int APP1_MARKER = 0xE1;
+    private static final int APP13_MARKER = 0xED;
+    private static final int TEM_MARKER = 0x01;
+    private static final int RST0_MARKER = 0xD0;
+    private static final int RST7_MARKER = 0xD7;
+    private static final int SEGMENT_HEADER_LENGTH = 4;        // marker and length
+    private static final int MAX_SEGMENT_CONTENTS = 0xFFFF - 2;
 
-    // EFFECTS: updates description and list of keywords in metadata for given file;
+    private static final byte[] PHOTOSHOP_IDENTIFIER = "Photoshop 3.0\0".getBytes(StandardCharsets.ISO_8859_1);
+
+    // Padding is held in Photoshop resources of its own (in the range reserved for plug-ins), which other readers
+    // skip as they do any resource they don't know; their signature, id, empty name and length take 12 bytes.
+    // commons-imaging writes at most IPTC_NON_EXTENDED_RECORD_MAXIMUM_SIZE bytes of data per resource, so padding
+    // larger than a resource can take is split into several.
+    private static final int PADDING_RESOURCE_ID = 0x1387;
+    private static final int PADDING_RESOURCE_OVERHEAD = 12;
+    private static final int MAX_PADDING_RESOURCE = PADDING_RESOURCE_OVERHEAD
+            + (IptcConstants.IPTC_NON_EXTENDED_RECORD_MAXIMUM_SIZE & ~1);
+    private static final int PADDING_RESERVE = 1024;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // EFFECTS: updates description and list of keywords in metadata for given file by replacing the file;
+    //          throws ImageReadException if jpg metadata cannot be read from given file;
+    //          throws ImageWriteException if jpg metadata cannot be written to file;
+    //          throws IOException if file cannot be read from or written to
+    public static void writeMetadata(File file, String description, List<String> keywords)
+            throws IOException, ImageReadException, ImageWriteException {
+        writeMetadata(file, description, keywords, false);
+    }
+
+    // EFFECTS: updates description and list of keywords in metadata for given file; if isPatchedInPlace, and the
+    //          new segment fits in the old one, overwrites the segment in the file rather than replacing the file;
     //          throws ImageReadException if jpg metadata cannot be read from given file;
     //          throws ImageWriteException if jpg metadata cannot be written to file;
     //          throws IOException if file cannot be read from or written to
-    static void writeMetadata(File file, String description, List<String> keywords)
+    public static void writeMetadata(File file, String description, List<String> keywords, boolean isPatchedInPlace)
             throws IOException, ImageReadException, ImageWriteException {
-        ImageMetadata metadata = Imaging.getMetadata(file);
-        JpegPhotoshopMetadata photoshopMetadata;
+        File temp;
 
-        if (metadata instanceof JpegImageMetadata) {
-            JpegImageMetadata jpegMetadata = (JpegImageMetadata) metadata;
-            photoshopMetadata = jpegMetadata.getPhotoshop();
+        try (FileChannel channel = isPatchedInPlace
+                ? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            PhotoshopSegment segment = findPhotoshopSegment(channel);
+            PhotoshopApp13Data data = segment.contents == null
+                    ? new PhotoshopApp13Data(new ArrayList<IptcRecord>(), new ArrayList<IptcBlock>())
+                    : new IptcParser().parsePhotoshopSegment(segment.contents, new HashMap<String, Object>());
+
+            List<IptcRecord> records = new ArrayList<IptcRecord>(data.getRecords());
+            updateDescription(records, description);
+            updateKeywords(records, keywords);
+            List<IptcBlock> blocks = removePadding(data.getNonIptcBlocks());
+
+            byte[] contents = writeSegmentContents(records, blocks, 0);
+            if (contents.length > MAX_SEGMENT_CONTENTS)
+                throw new ImageWriteException("IPTC data too large for jpg APP13 segment");
+
+            if (isPatchedInPlace && segment.contents != null) {
+                int slack = segment.contents.length - contents.length;
+                if (slack == 0 || (slack >= PADDING_RESOURCE_OVERHEAD && slack % 2 == 0)) {
+                    // Not atomic: a crash part way through leaves a mix of old and new segment bytes, though
+                    // the segment's length, and so the image data after it, stays intact
+                    if (slack > 0)
+                        contents = writeSegmentContents(records, blocks, slack);
+                    writeFully(channel, ByteBuffer.wrap(contents), segment.start + SEGMENT_HEADER_LENGTH);
+                    channel.force(false);
+                    return;
+                }
+            }
+
+            int padding = Math.min(PADDING_RESERVE, MAX_SEGMENT_CONTENTS - contents.length) & ~1;
+            if (padding >= PADDING_RESOURCE_OVERHEAD)
+                contents = writeSegmentContents(records, blocks, padding);
+            temp = copyWithSegment(file, channel, segment, contents);
         }
-        else {
-            photoshopMetadata = new JpegPhotoshopMetadata(new PhotoshopApp13Data(new ArrayList<IptcRecord>(),
-                    new ArrayList<IptcBlock>()));
+
+        try {
+            replaceFile(temp, file);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
         }
+    }
 
-        photoshopMetadata = updateDescription(photoshopMetadata, description);
-        photoshopMetadata = updateKeywords(photoshopMetadata, keywords);
+    // MODIFIES: file
+    // EFFECTS:  renames temp over given file, atomically if the file system supports it, then syncs the directory
+    //           holding them so that the rename itself survives a crash
+    private static void replaceFile(File temp, File file) throws IOException {
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
 
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        new JpegIptcRewriter().writeIPTC(file, os, photoshopMetadata.photoshopApp13Data);
+        try (FileChannel directory = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(),
+                StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // Directories can't be opened for syncing on some platforms (e.g. Windows), which don't need it
+        }
+    }
+
+    // EFFECTS: returns the Photoshop APP13 segment among the marker segments in front of the image data in given
+    //          jpg file; if there is none, returns empty segment located where one should be inserted, i.e. after
+    //          the APP0 and APP1 segments at the start of the file;
+    //          throws ImageReadException if file is not a jpg file or holds more than one Photoshop segment
+    private static PhotoshopSegment findPhotoshopSegment(FileChannel channel) throws IOException, ImageReadException {
+        ByteBuffer header = ByteBuffer.allocate(2);
+        readFully(channel, header, 0);
+        if ((header.get(0) & 0xFF) != MARKER_PREFIX || (header.get(1) & 0xFF) != SOI_MARKER)
+            throw new ImageReadException("Not a jpg file");
+
+        PhotoshopSegment segment = new PhotoshopSegment(header.capacity());
+        boolean isInsertionFound = false;
+        long position = header.capacity();
+
+        while (true) {
+            readFully(channel, header, position);
+            if ((header.get(0) & 0xFF) != MARKER_PREFIX)
+                throw new ImageReadException("Expected jpg marker");
+
+            // Skip fill bytes in front of the marker
+            int marker = header.get(1) & 0xFF;
+            if (marker == MARKER_PREFIX) {
+                position++;
+                continue;
+            }
+
+            long start = position;
+            position += header.capacity();
+            if (marker == SOS_MARKER || marker == EOI_MARKER)
+                return segment;
+
+            if (marker == TEM_MARKER || (marker >= RST0_MARKER && marker <= RST7_MARKER)) {
+                isInsertionFound = true;
+                continue;
+            }
+
+            readFully(channel, header, position);
+            int length = (header.getShort(0) & 0xFFFF) - 2;
+            if (length < 0)
+                throw new ImageReadException("Invalid jpg segment length");
+            position += header.capacity();
 
-        FileOutputStream outStr = new FileOutputStream(file);
-        outStr.write(os.toByteArray());
-        outStr.close();
+            if (marker == APP13_MARKER) {
+                ByteBuffer contents = ByteBuffer.allocate(length);
+                readFully(channel, contents, position);
+
+                if (startsWith(contents.array(), PHOTOSHOP_IDENTIFIER)) {
+                    if (segment.contents != null)
+                        throw new ImageReadException("Jpg contains more than one Photoshop APP13 segment");
+                    segment = new PhotoshopSegment(start, contents.array());
+                }
+            }
+
+            position += length;
+            if (!isInsertionFound && (marker == APP0_MARKER || marker == APP1_MARKER)) {
+                if (segment.contents == null)
+                    segment = new PhotoshopSegment(position);
+            } else {
+                isInsertionFound = true;
+            }
+        }
     }
 
-    // EFFECTS: updates photo description in given metadata
-    private static JpegPhotoshopMetadata updateDescription(JpegPhotoshopMetadata photoshopMetadata, String description) {
-        List<IptcRecord> records = photoshopMetadata.photoshopApp13Data.getRecords();
-        removeRecordType(records, IptcTypes.CAPTION_ABSTRACT);
+    // EFFECTS: returns temporary file, in the same directory as given file, holding a copy of the file read from
+    //          channel in which given segment is replaced by (or, if empty, is inserted as) a Photoshop APP13
+    //          segment with given contents; the temporary file is synced to disk
+    private static File copyWithSegment(File file, FileChannel channel, PhotoshopSegment segment, byte[] contents)
+            throws IOException {
+        File temp = File.createTempFile(file.getName(), TEMP_SUFFIX, file.getAbsoluteFile().getParentFile());
+        boolean isCopied = false;
 
-        records.add(new IptcRecord(IptcTypes.CAPTION_ABSTRACT, description));
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_LENGTH);
+            header.put((byte) MARKER_PREFIX).put((byte) APP13_MARKER).putShort((short) (contents.length + 2));
+            header.flip();
+
+            transferFully(channel, 0, segment.start, out);
+            writeFully(out, header);
+            writeFully(out, ByteBuffer.wrap(contents));
+            long end = segment.getEnd();
+            transferFully(channel, end, channel.size() - end, out);
+            out.force(true);
+            isCopied = true;
+        } finally {
+            if (!isCopied)
+                Files.deleteIfExists(temp.toPath());
+        }
+
+        return temp;
+    }
+
+    // REQUIRES: padding == 0, or padding >= PADDING_RESOURCE_OVERHEAD and is even
+    // EFFECTS: returns contents of a Photoshop APP13 segment holding given resource blocks, an IPTC resource block
+    //          holding given records and padding resource blocks taking padding bytes in all
+    private static byte[] writeSegmentContents(List<IptcRecord> records, List<IptcBlock> blocks, int padding)
+            throws IOException, ImageWriteException {
+        IptcParser parser = new IptcParser();
+        List<IptcBlock> newBlocks = new ArrayList<IptcBlock>(blocks);
+        newBlocks.add(new IptcBlock(IptcConstants.IMAGE_RESOURCE_BLOCK_IPTC_DATA, new byte[0],
+                parser.writeIPTCBlock(records)));
 
-        return new JpegPhotoshopMetadata(new PhotoshopApp13Data(records,photoshopMetadata.photoshopApp13Data.getRawBlocks()));
+        // Every block but the last is as large as possible, unless that would leave too little for the last one
+        while (padding > 0) {
+            int size = Math.min(padding, MAX_PADDING_RESOURCE);
+            if (padding - size > 0 && padding - size < PADDING_RESOURCE_OVERHEAD)
+                size = padding - PADDING_RESOURCE_OVERHEAD;
+            newBlocks.add(new IptcBlock(PADDING_RESOURCE_ID, new byte[0], new byte[size - PADDING_RESOURCE_OVERHEAD]));
+            padding -= size;
+        }
+
+        return parser.writePhotoshopApp13Segment(new PhotoshopApp13Data(records, newBlocks));
     }
 
-    // EFFECTS: updates photo's list of keywords in given metadata
-    private static JpegPhotoshopMetadata updateKeywords(JpegPhotoshopMetadata photoshopMetadata, List<String> keywords) {
-        List<IptcRecord> records = photoshopMetadata.photoshopApp13Data.getRecords();
+    // EFFECTS: returns given resource blocks other than padding
+    private static List<IptcBlock> removePadding(List<IptcBlock> blocks) {
+        List<IptcBlock> result = new ArrayList<IptcBlock>();
+        for (IptcBlock block : blocks) {
+            if (block.blockType != PADDING_RESOURCE_ID)
+                result.add(block);
+        }
+
+        return result;
+    }
+
+    // MODIFIES: records
+    // EFFECTS:  replaces photo description in given records
+    private static void updateDescription(List<IptcRecord> records, String description) {
+        removeRecordType(records, IptcTypes.CAPTION_ABSTRACT);
+        records.add(new IptcRecord(IptcTypes.CAPTION_ABSTRACT, description));
+    }
+
+    // MODIFIES: records
+    // EFFECTS:  replaces photo's list of keywords in given records
+    private static void updateKeywords(List<IptcRecord> records, List<String> keywords) {
         removeRecordType(records, IptcTypes.KEYWORDS);
 
         for (String keyword : keywords) {
             records.add(new IptcRecord(IptcTypes.KEYWORDS, keyword));
         }
-
-        return new JpegPhotoshopMetadata(new PhotoshopApp13Data(records, photoshopMetadata.photoshopApp13Data.getRawBlocks()));
     }
 
     // EFFECTS: removes all records of specified type from given list of records
@@ -76,4 +281,69 @@ class JpgIptcRecordWriter {
                 records.remove(record);
         }
     }
+
+    // EFFECTS: returns true if data starts with given prefix
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        return data.length >= prefix.length && Arrays.equals(Arrays.copyOf(data, prefix.length), prefix);
+    }
+
+    // MODIFIES: buffer
+    // EFFECTS:  fills given buffer from channel, starting at given position;
+    //           throws EOFException if channel ends first
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+                throw new EOFException("Unexpected end of jpg file");
+        }
+    }
+
+    // EFFECTS: writes remaining bytes of given buffer to channel, starting at given position
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    // EFFECTS: writes remaining bytes of given buffer to channel, at its current position
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    // EFFECTS: copies count bytes starting at given position in channel from to the end of channel to;
+    //          throws EOFException if from ends first
+    private static void transferFully(FileChannel from, long position, long count, FileChannel to)
+            throws IOException {
+        while (count > 0) {
+            long transferred = from.transferTo(position, count, to);
+            if (transferred <= 0)
+                throw new EOFException("Unexpected end of jpg file");
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    // Location of the Photoshop APP13 segment of a jpg file and its contents (after marker and length),
+    // or, if the file has no such segment, where one should be inserted
+    private static class PhotoshopSegment {
+        private final long start;
+        private final byte[] contents;
+
+        // EFFECTS: constructs empty segment to be inserted at given position
+        PhotoshopSegment(long start) {
+            this(start, null);
+        }
+
+        // EFFECTS: constructs segment starting at given position, with given contents
+        PhotoshopSegment(long start, byte[] contents) {
+            this.start = start;
+            this.contents = contents;
+        }
+
+        // EFFECTS: returns position just past the end of this segment
+        long getEnd() {
+            return contents == null ? start : start + SEGMENT_HEADER_LENGTH + contents.length;
+        }
+    }
 }
@@ -0,0 +1,76 @@
+package photoalbum.utility;
+
+// Applies per-pixel colour operations to runs of packed ARGB pixels. Two sets of kernels exist: plain scalar
+// loops, and kernels written with the jdk.incubator.vector API that process a SIMD register of pixels at a time.
+// The vector kernels are used when the JVM was started with --add-modules jdk.incubator.vector and the processor
+// has SIMD registers of at least MIN_VECTOR_LANES ints; otherwise, or if the system property photoalbum.pixelKernels
+// is "scalar", the scalar kernels are used. Both give identical results.
+public abstract class PixelKernels {
+    public static final int MIX_WEIGHT_SHIFT = 12;
+    public static final int MIX_WEIGHT_ONE = 1 << MIX_WEIGHT_SHIFT;     // channel mix weight standing for 1
+
+    // sum / 3 == (sum * GRAY_MULTIPLIER) >>> GRAY_SHIFT for every sum of three levels (0 <= sum <= 765)
+    static final int GRAY_MULTIPLIER = 21846;
+    static final int GRAY_SHIFT = 16;
+
+    private static final int MIN_VECTOR_LANES = 4;
+    private static final String KERNELS_PROPERTY = "photoalbum.pixelKernels";
+    private static final String VECTOR_KERNELS_CLASS = "photoalbum.utility.VectorPixelKernels";
+
+    private static final PixelKernels SCALAR = new ScalarPixelKernels();
+    private static final PixelKernels VECTOR = loadVectorKernels();
+    private static final PixelKernels DEFAULT =
+            VECTOR == null || "scalar".equals(System.getProperty(KERNELS_PROPERTY)) ? SCALAR : VECTOR;
+
+    // EFFECTS: returns the kernels chosen at startup
+    public static PixelKernels getDefault() {
+        return DEFAULT;
+    }
+
+    // EFFECTS: returns the scalar kernels
+    public static PixelKernels getScalar() {
+        return SCALAR;
+    }
+
+    // EFFECTS: returns the vector kernels, or null if they cannot be used on this JVM or processor
+    public static PixelKernels getVector() {
+        return VECTOR;
+    }
+
+    // EFFECTS: returns the vector kernels if the jdk.incubator.vector module is present and the processor has
+    //          enough SIMD lanes, otherwise null; the vector kernels are loaded by name, so that this class loads
+    //          without the module
+    private static PixelKernels loadVectorKernels() {
+        try {
+            PixelKernels kernels = (PixelKernels) Class.forName(VECTOR_KERNELS_CLASS).getDeclaredConstructor()
+                    .newInstance();
+            return kernels.getLanes() >= MIN_VECTOR_LANES ? kernels : null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    // EFFECTS: returns name of these kernels
+    public abstract String getName();
+
+    // EFFECTS: returns number of pixels processed at a time
+    public abstract int getLanes();
+
+    // MODIFIES: pixels
+    // EFFECTS:  replaces each of pixels[from, to) by the opaque gray whose level is the average of its red, green
+    //           and blue levels
+    public abstract void blackAndWhite(int[] pixels, int from, int to);
+
+    // REQUIRES: red, green and blue each hold 256 levels in 0..255
+    // MODIFIES: pixels
+    // EFFECTS:  maps the red, green and blue levels of each of pixels[from, to) through the table for that
+    //           channel; alpha is unchanged
+    public abstract void lookup(int[] pixels, int from, int to, int[] red, int[] green, int[] blue);
+
+    // REQUIRES: weights holds a 3 x 3 matrix row by row, in fixed point with MIX_WEIGHT_ONE standing for 1,
+    //           small enough that weighted sums of levels fit in an int
+    // MODIFIES: pixels
+    // EFFECTS:  replaces the red, green and blue levels of each of pixels[from, to) by the product of the matrix
+    //           with them, rounded and clamped to 0..255; alpha is unchanged
+    public abstract void channelMix(int[] pixels, int from, int to, int[] weights);
+}
@@ -0,0 +1,54 @@
+package photoalbum.utility;
+
+// Pixel kernels processing one pixel at a time, in loops simple enough for the JIT compiler to unroll
+class ScalarPixelKernels extends PixelKernels {
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public int getLanes() {
+        return 1;
+    }
+
+    @Override
+    public void blackAndWhite(int[] pixels, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int rgb = pixels[i];
+            int sum = ((rgb >> 16) & 0xFF) + ((rgb >> 8) & 0xFF) + (rgb & 0xFF);
+            int average = (sum * GRAY_MULTIPLIER) >>> GRAY_SHIFT;
+            pixels[i] = 0xFF000000 | (average << 16) | (average << 8) | average;
+        }
+    }
+
+    @Override
+    public void lookup(int[] pixels, int from, int to, int[] red, int[] green, int[] blue) {
+        for (int i = from; i < to; i++) {
+            int rgb = pixels[i];
+            pixels[i] = (rgb & 0xFF000000) | red[(rgb >> 16) & 0xFF] << 16 | green[(rgb >> 8) & 0xFF] << 8
+                    | blue[rgb & 0xFF];
+        }
+    }
+
+    @Override
+    public void channelMix(int[] pixels, int from, int to, int[] weights) {
+        int rr = weights[0], rg = weights[1], rb = weights[2];
+        int gr = weights[3], gg = weights[4], gb = weights[5];
+        int br = weights[6], bg = weights[7], bb = weights[8];
+        int rounding = MIX_WEIGHT_ONE / 2;
+
+        for (int i = from; i < to; i++) {
+            int rgb = pixels[i];
+            int r = (rgb >> 16) & 0xFF;
+            int g = (rgb >> 8) & 0xFF;
+            int b = rgb & 0xFF;
+
+            int newRed = Math.max(0, Math.min((rr * r + rg * g + rb * b + rounding) >> MIX_WEIGHT_SHIFT, 255));
+            int newGreen = Math.max(0, Math.min((gr * r + gg * g + gb * b + rounding) >> MIX_WEIGHT_SHIFT, 255));
+            int newBlue = Math.max(0, Math.min((br * r + bg * g + bb * b + rounding) >> MIX_WEIGHT_SHIFT, 255));
+            pixels[i] = (rgb & 0xFF000000) | newRed << 16 | newGreen << 8 | newBlue;
+        }
+    }
+}
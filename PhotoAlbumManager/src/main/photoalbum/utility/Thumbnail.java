@@ -12,8 +12,8 @@ import java.awt.image.BufferedImage;
 // Represents a thumbnail constructed from a larger image
 public class Thumbnail {
 
-	private static final int MAX_WIDTH = 120;
-	private static final int MAX_HEIGHT = 80;
+	public static final int MAX_WIDTH = 120;
+	public static final int MAX_HEIGHT = 80;
 
     private int width;
     private int height;
@@ -28,6 +28,21 @@ public class Thumbnail {
 		computeThumbnail(fullImage);
 	}
 
+	// EFFECTS: constructs thumbnail with no image; image must be set by caller
+	private Thumbnail() {
+		width = MAX_WIDTH;
+		height = MAX_HEIGHT;
+	}
+
+	// REQUIRES: thumbnailImage != null and fits within rectangle of size MAX_WIDTH X MAX_HEIGHT
+	// EFFECTS: returns thumbnail having given, already computed, thumbnail image
+	// NOTE:    should be called only by ThumbnailCache
+	static Thumbnail fromThumbnailImage(BufferedImage thumbnailImage) {
+		Thumbnail thumbnail = new Thumbnail();
+		thumbnail.thumbnailImage = thumbnailImage;
+		return thumbnail;
+	}
+
 	public Image getThumbnailImage() {
 		return thumbnailImage;
 	}
@@ -48,18 +63,11 @@ public class Thumbnail {
 				/ (double) fullImage.getHeight(null);
 
 		if (thumbRatio < imageRatio) {
-			thumbHeightToUse = (int) (width / imageRatio);
+			thumbHeightToUse = Math.max(1, (int) (width / imageRatio));
 		} else {
-			thumbWidthToUse = (int) (height * imageRatio);
+			thumbWidthToUse = Math.max(1, (int) (height * imageRatio));
 		}
 
-		// Draw the full image to the thumbnail image, scaling it on the fly
-		thumbnailImage = new BufferedImage(thumbWidthToUse, thumbHeightToUse,
-				BufferedImage.TYPE_INT_RGB);
-		Graphics2D graphics2D = thumbnailImage.createGraphics();
-		graphics2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-				RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-		graphics2D.drawImage(fullImage, 0, 0, thumbWidthToUse,
-				thumbHeightToUse, null);
+		thumbnailImage = ImageResizer.resize(fullImage, thumbWidthToUse, thumbHeightToUse);
 	}
 }
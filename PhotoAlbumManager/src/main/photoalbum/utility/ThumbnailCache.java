@@ -0,0 +1,202 @@
+package photoalbum.utility;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// Persistent cache of thumbnails, stored as small image files in a directory next to the photos folder;
+// an entry is only used while the size and last-modified time of the photo file it was computed from are unchanged.
+// When the entries exceed the cache's byte budget, least-recently-used ones are deleted, so that entries for photo
+// files that were moved or deleted don't pile up
+public class ThumbnailCache {
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+    private static final long DEFAULT_BUDGET_MEGABYTES =
+            Long.parseLong(System.getProperty("photoalbum.thumbnailCacheMB", "64"));
+    private static final String PROJECT_DIRECTORY_PATH = System.getProperty("user.dir");
+    private static final String FILE_SEPARATOR = System.getProperty("file.separator");
+    private static final String CACHE_DIRECTORY = System.getProperty("photoalbum.thumbnailCache",
+            PROJECT_DIRECTORY_PATH + FILE_SEPARATOR + ".thumbnails");
+    private static final String CACHE_FILE_FORMAT = "png";
+    private static final String CACHE_FILE_TYPE = "." + CACHE_FILE_FORMAT;
+
+    private static volatile ThumbnailCache sharedCache = new ThumbnailCache(new File(CACHE_DIRECTORY));
+
+    private File directory;
+    private long budget;
+    private long size = -1;     // total size of the entries, or -1 until the directory is first scanned
+
+    // EFFECTS: constructs thumbnail cache storing its entries in given directory, within the default budget
+    public ThumbnailCache(File directory) {
+        this(directory, DEFAULT_BUDGET_MEGABYTES * BYTES_PER_MEGABYTE);
+    }
+
+    // REQUIRES: budget >= 0
+    // EFFECTS: constructs thumbnail cache storing at most budget bytes of entries in given directory
+    public ThumbnailCache(File directory, long budget) {
+        this.directory = directory;
+        this.budget = budget;
+    }
+
+    // EFFECTS: returns the cache shared by all photos
+    public static ThumbnailCache getSharedCache() {
+        return sharedCache;
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  makes given cache the one shared by all photos, e.g. so that tests keep their entries out of the
+    //           working directory
+    public static void setSharedCache(ThumbnailCache cache) {
+        sharedCache = cache;
+    }
+
+    // EFFECTS: returns thumbnail cached for given photo file, or null if there is no up-to-date entry
+    //          for the file or the entry cannot be read
+    public Thumbnail getThumbnail(File photoFile) {
+        File entry = getEntryFile(photoFile);
+        if (entry == null || !entry.isFile())
+            return null;
+
+        try {
+            BufferedImage thumbnailImage = ImageIO.read(entry);
+            if (thumbnailImage == null)
+                return null;
+
+            // The entry's own last-modified time records when it was last used, for pruning
+            entry.setLastModified(System.currentTimeMillis());
+            return Thumbnail.fromThumbnailImage(thumbnailImage);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  stores given thumbnail for given photo file, replacing any out-of-date entries for the file;
+    //           silently returns if the thumbnail cannot be stored
+    public void putThumbnail(File photoFile, Thumbnail thumbnail) {
+        File entry = getEntryFile(photoFile);
+        if (entry == null || entry.isFile())
+            return;
+
+        try {
+            Files.createDirectories(directory.toPath());
+            removeEntriesFor(photoFile);
+
+            // Write to a temporary file first, so that readers never see a partially written entry
+            File temp = File.createTempFile(entry.getName(), ".tmp", directory);
+            try {
+                ImageIO.write((BufferedImage) thumbnail.getThumbnailImage(), CACHE_FILE_FORMAT, temp);
+                Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp.toPath());
+            }
+            addToSize(entry.length());
+        } catch (IOException e) {
+            System.out.println("Could not cache thumbnail for file: " + photoFile.getName());
+        }
+    }
+
+    // EFFECTS: returns cache entry file for given photo file in its current state (size and last-modified time);
+    //          returns null if photo file does not exist
+    private File getEntryFile(File photoFile) {
+        long size = photoFile.length();
+        long lastModified = photoFile.lastModified();
+        if (lastModified == 0)
+            return null;
+
+        return new File(directory, getKey(photoFile) + "-" + size + "-" + lastModified + CACHE_FILE_TYPE);
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  deletes all entries for given photo file
+    private void removeEntriesFor(File photoFile) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath(), getKey(photoFile) + "-*")) {
+            for (Path entry : stream) {
+                long length = entry.toFile().length();
+                if (Files.deleteIfExists(entry))
+                    addToSize(-length);
+            }
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  adds given number of bytes to the total size of the entries, first scanning the directory if it
+    //           hasn't been; deletes least-recently-used entries while the total exceeds the budget
+    private synchronized void addToSize(long bytes) throws IOException {
+        if (size < 0) {
+            size = 0;
+            for (File entry : listEntries())
+                size += entry.length();
+        } else {
+            size += bytes;
+        }
+
+        if (size > budget)
+            prune();
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  deletes least-recently-used entries until their total size is within the budget
+    private void prune() throws IOException {
+        List<File> entries = listEntries();
+        final List<Long> lastUsed = new ArrayList<Long>();
+        for (File entry : entries)
+            lastUsed.add(entry.lastModified());
+
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < entries.size(); i++)
+            order.add(i);
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(lastUsed.get(a), lastUsed.get(b));
+            }
+        });
+
+        size = 0;
+        for (File entry : entries)
+            size += entry.length();
+
+        for (int i = 0; i < order.size() && size > budget; i++) {
+            File entry = entries.get(order.get(i));
+            long length = entry.length();
+            if (Files.deleteIfExists(entry.toPath()))
+                size -= length;
+        }
+    }
+
+    // EFFECTS: returns all entry files in the cache directory
+    private List<File> listEntries() throws IOException {
+        List<File> entries = new ArrayList<File>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath(), "*" + CACHE_FILE_TYPE)) {
+            for (Path entry : stream)
+                entries.add(entry.toFile());
+        }
+
+        return entries;
+    }
+
+    // EFFECTS: returns key identifying given photo file: a hex digest of its absolute path
+    private static String getKey(File photoFile) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(photoFile.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder key = new StringBuilder();
+            for (byte b : hash)
+                key.append(String.format("%02x", b));
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package photoalbum.utility;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+// Undo/redo history of changes to the pixels of an image. The image is divided into TILE_SIZE x TILE_SIZE tiles and
+// each step only stores the tiles that the change modified, so a change to a small part of a large image costs
+// a few kilobytes. Undoing or redoing a step swaps its tiles with those of the image, so it needs no new pixel
+// arrays. The steps count against a byte budget, which can be shared by the histories of many images; when the
+// steps take more than the budget, the oldest steps of the histories least recently recorded to are dropped.
+// Histories are thread-safe, as a step of one history can be dropped by a thread recording to another.
+public class TileHistory {
+    public static final int TILE_SIZE = 64;
+
+    private final Budget budget;
+    private LinkedList<Step> undoSteps;     // most recent step last
+    private LinkedList<Step> redoSteps;     // most recently undone step last
+    private long size;
+
+    // REQUIRES: budget >= 0
+    // EFFECTS: constructs empty history holding at most budget bytes of tiles, sharing its budget with no other
+    //          history
+    public TileHistory(long budget) {
+        this(new Budget(budget));
+    }
+
+    // EFFECTS: constructs empty history whose tiles count against given budget
+    public TileHistory(Budget budget) {
+        this.budget = budget;
+        undoSteps = new LinkedList<Step>();
+        redoSteps = new LinkedList<Step>();
+    }
+
+    // REQUIRES: before.length == after.length == width * height
+    // MODIFIES: this
+    // EFFECTS:  records a step changing the pixels of an image of given size from before to after, storing the
+    //           tiles of before that differ from after; discards all undone steps and, if the histories sharing
+    //           this history's budget are over it, their oldest steps (possibly including this one)
+    public void record(int[] before, int[] after, int width, int height) {
+        List<Integer> changedTiles = new ArrayList<Integer>();
+        List<int[]> tileContents = new ArrayList<int[]>();
+        int tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesDown = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+        for (int tile = 0; tile < tilesAcross * tilesDown; tile++) {
+            Tile bounds = new Tile(tile, tilesAcross, width, height);
+            if (!bounds.isSame(before, after, width)) {
+                changedTiles.add(tile);
+                tileContents.add(bounds.copy(before, width));
+            }
+        }
+
+        addStep(new Step(width, height, changedTiles, tileContents));
+        budget.evictToBudget();
+    }
+
+    // EFFECTS: returns true if there is a recorded step to undo
+    public synchronized boolean canUndo() {
+        return !undoSteps.isEmpty();
+    }
+
+    // EFFECTS: returns true if there is an undone step to redo
+    public synchronized boolean canRedo() {
+        return !redoSteps.isEmpty();
+    }
+
+    // REQUIRES: pixels hold the image as it was after the last recorded or redone step
+    // MODIFIES: this, pixels
+    // EFFECTS:  if there is a step to undo, restores the pixels changed by the last step to their values before it
+    //           and returns true; otherwise returns false, e.g. if the step was dropped to keep within budget
+    public synchronized boolean undo(int[] pixels) {
+        if (undoSteps.isEmpty())
+            return false;
+
+        Step step = undoSteps.removeLast();
+        step.swap(pixels);
+        redoSteps.addLast(step);
+        return true;
+    }
+
+    // REQUIRES: pixels hold the image as it was after the last undo
+    // MODIFIES: this, pixels
+    // EFFECTS:  if there is an undone step to redo, changes the pixels restored by the last undo back to their
+    //           values after the undone step and returns true; otherwise returns false
+    public synchronized boolean redo(int[] pixels) {
+        if (redoSteps.isEmpty())
+            return false;
+
+        Step step = redoSteps.removeLast();
+        step.swap(pixels);
+        undoSteps.addLast(step);
+        return true;
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  discards all undone steps
+    public synchronized void clearRedo() {
+        long released = 0;
+        for (Step step : redoSteps)
+            released += step.getSize();
+        redoSteps.clear();
+        resize(-released);
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  discards all steps
+    public synchronized void clear() {
+        undoSteps.clear();
+        redoSteps.clear();
+        resize(-size);
+    }
+
+    // EFFECTS: returns number of steps that can be undone
+    public synchronized int getUndoDepth() {
+        return undoSteps.size();
+    }
+
+    // EFFECTS: returns number of bytes of tiles held by history
+    public synchronized long getSize() {
+        return size;
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  discards all undone steps and adds given step as the last step to undo
+    private synchronized void addStep(Step step) {
+        clearRedo();
+        undoSteps.addLast(step);
+        resize(step.getSize());
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  drops oldest steps, then the undone steps that would be redone last, while the budget is exceeded
+    private synchronized void evictWhileOverBudget() {
+        while (budget.isExceeded() && !(undoSteps.isEmpty() && redoSteps.isEmpty())) {
+            Step step = undoSteps.isEmpty() ? redoSteps.removeFirst() : undoSteps.removeFirst();
+            resize(-step.getSize());
+        }
+    }
+
+    // REQUIRES: this history's lock is held
+    // MODIFIES: this
+    // EFFECTS:  adds change to the size of this history and of its budget
+    private void resize(long change) {
+        size += change;
+        budget.resize(this, change, size == 0);
+    }
+
+    // A byte budget shared by histories. It keeps the histories holding steps in the order in which they were last
+    // recorded to, so that the steps of histories that have not been used for longest are dropped first.
+    // A history is locked before its budget, and the budget is never locked while locking a history.
+    public static class Budget {
+        private long capacity;
+        private long size;
+        private LinkedHashSet<TileHistory> histories;   // least recently recorded to first
+
+        // REQUIRES: capacity >= 0
+        // EFFECTS: constructs budget allowing histories to hold capacity bytes of tiles between them
+        public Budget(long capacity) {
+            this.capacity = capacity;
+            histories = new LinkedHashSet<TileHistory>();
+        }
+
+        // EFFECTS: returns number of bytes of tiles held by the histories sharing this budget
+        public synchronized long getSize() {
+            return size;
+        }
+
+        // EFFECTS: returns true if histories hold more than capacity bytes of tiles
+        synchronized boolean isExceeded() {
+            return size > capacity;
+        }
+
+        // MODIFIES: this
+        // EFFECTS:  adds change to the size of given history; a history that grew becomes the most recently
+        //           recorded to, and a history left empty is forgotten
+        synchronized void resize(TileHistory history, long change, boolean isEmpty) {
+            size += change;
+            if (isEmpty) {
+                histories.remove(history);
+            } else if (change > 0) {
+                histories.remove(history);
+                histories.add(history);
+            }
+        }
+
+        // MODIFIES: this, histories sharing this budget
+        // EFFECTS:  drops steps of the least recently recorded to histories first, until within capacity
+        void evictToBudget() {
+            List<TileHistory> evictionOrder;
+            synchronized (this) {
+                if (size <= capacity)
+                    return;
+                evictionOrder = new ArrayList<TileHistory>(histories);
+            }
+
+            // Each history is locked on its own, without this budget's lock, which it locks to account for its steps
+            for (TileHistory history : evictionOrder) {
+                if (!isExceeded())
+                    return;
+                history.evictWhileOverBudget();
+            }
+        }
+    }
+
+    // The pixels of the tiles of an image that a change modified
+    private static class Step {
+        private int width;
+        private int height;
+        private List<Integer> tiles;
+        private List<int[]> contents;
+
+        Step(int width, int height, List<Integer> tiles, List<int[]> contents) {
+            this.width = width;
+            this.height = height;
+            this.tiles = tiles;
+            this.contents = contents;
+        }
+
+        // EFFECTS: returns number of bytes of pixels held by step
+        long getSize() {
+            long pixels = 0;
+            for (int[] content : contents)
+                pixels += content.length;
+            return 4 * pixels;
+        }
+
+        // MODIFIES: this, pixels
+        // EFFECTS:  swaps the stored tiles with the corresponding tiles of pixels
+        void swap(int[] pixels) {
+            int tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+            for (int i = 0; i < tiles.size(); i++)
+                new Tile(tiles.get(i), tilesAcross, width, height).swap(contents.get(i), pixels, width);
+        }
+    }
+
+    // The bounds of a tile of an image, the tiles being numbered row by row
+    private static class Tile {
+        private int left;
+        private int top;
+        private int tileWidth;
+        private int tileHeight;
+
+        Tile(int tile, int tilesAcross, int width, int height) {
+            left = (tile % tilesAcross) * TILE_SIZE;
+            top = (tile / tilesAcross) * TILE_SIZE;
+            tileWidth = Math.min(TILE_SIZE, width - left);
+            tileHeight = Math.min(TILE_SIZE, height - top);
+        }
+
+        // EFFECTS: returns true if this tile holds the same pixels in the images of given width a and b
+        boolean isSame(int[] a, int[] b, int width) {
+            for (int y = top; y < top + tileHeight; y++) {
+                int start = y * width + left;
+                for (int i = start; i < start + tileWidth; i++) {
+                    if (a[i] != b[i])
+                        return false;
+                }
+            }
+            return true;
+        }
+
+        // EFFECTS: returns copy of the pixels of this tile in the image of given width, row by row
+        int[] copy(int[] pixels, int width) {
+            int[] content = new int[tileWidth * tileHeight];
+            for (int y = 0; y < tileHeight; y++)
+                System.arraycopy(pixels, (top + y) * width + left, content, y * tileWidth, tileWidth);
+            return content;
+        }
+
+        // MODIFIES: content, pixels
+        // EFFECTS:  swaps content with the pixels of this tile in the image of given width
+        void swap(int[] content, int[] pixels, int width) {
+            for (int y = 0; y < tileHeight; y++) {
+                int row = (top + y) * width + left;
+                int contentRow = y * tileWidth;
+                for (int x = 0; x < tileWidth; x++) {
+                    int temp = pixels[row + x];
+                    pixels[row + x] = content[contentRow + x];
+                    content[contentRow + x] = temp;
+                }
+            }
+        }
+    }
+}
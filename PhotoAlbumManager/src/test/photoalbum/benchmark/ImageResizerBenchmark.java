@@ -0,0 +1,79 @@
+package photoalbum.benchmark;
+
+import photoalbum.utility.ImageResizer;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+// Compares the per-megapixel throughput of ImageResizer with the AWT scaling paths it replaced, for reductions to
+// display and thumbnail size and for a reduction too small for halving; throughput counts source pixels
+public class ImageResizerBenchmark {
+
+    public static void main(String[] args) {
+        Throughput.printEnvironment("Resizing throughput, millions of source pixels per second");
+        run(6000, 4000, 600, 400);
+        run(3000, 2000, 150, 100);
+        run(1200, 800, 900, 600);
+    }
+
+    // EFFECTS: measures resizing a random image of given size to given target size by each resizer
+    private static void run(int width, int height, final int targetWidth, final int targetHeight) {
+        final BufferedImage image = createRandomImage(width, height);
+        long pixels = (long) width * height;
+        System.out.println(width + "x" + height + " -> " + targetWidth + "x" + targetHeight);
+
+        Throughput.measure("ImageResizer", pixels, new Throughput.Work() {
+            @Override
+            public long run() {
+                return ImageResizer.resize(image, targetWidth, targetHeight).getRGB(0, 0);
+            }
+        });
+        Throughput.measure("getScaledInstance(SCALE_DEFAULT) + redraw", pixels, new Throughput.Work() {
+            @Override
+            public long run() {
+                return redraw(image.getScaledInstance(targetWidth, targetHeight, Image.SCALE_DEFAULT),
+                        targetWidth, targetHeight, null).getRGB(0, 0);
+            }
+        });
+        Throughput.measure("getScaledInstance(SCALE_SMOOTH) + redraw", pixels, new Throughput.Work() {
+            @Override
+            public long run() {
+                return redraw(image.getScaledInstance(targetWidth, targetHeight, Image.SCALE_SMOOTH),
+                        targetWidth, targetHeight, null).getRGB(0, 0);
+            }
+        });
+        Throughput.measure("drawImage, bilinear", pixels, new Throughput.Work() {
+            @Override
+            public long run() {
+                return redraw(image, targetWidth, targetHeight, RenderingHints.VALUE_INTERPOLATION_BILINEAR)
+                        .getRGB(0, 0);
+            }
+        });
+    }
+
+    // EFFECTS: returns TYPE_INT_RGB image of given size holding given image drawn to fill it, using given
+    //          interpolation hint if not null
+    private static BufferedImage redraw(Image image, int width, int height, Object interpolation) {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = result.createGraphics();
+        if (interpolation != null)
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return result;
+    }
+
+    // EFFECTS: returns TYPE_INT_RGB image of given size filled with random pixels
+    private static BufferedImage createRandomImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(width);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++)
+                row[x] = random.nextInt();
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+}
@@ -0,0 +1,79 @@
+package photoalbum.benchmark;
+
+import photoalbum.utility.PixelKernels;
+
+import java.util.Random;
+
+// Compares the throughput of the scalar and vector pixel kernels, on a row held in the processor's cache and on a
+// 24 megapixel image. Run with --add-modules jdk.incubator.vector for the vector kernels to be measured; e.g.
+// -XX:UseAVX=2 or -XX:MaxVectorSize=16 measure them on narrower SIMD registers than the processor's widest.
+public class PixelKernelsBenchmark {
+    private static final int ROW_PIXELS = 6000;
+    private static final int IMAGE_PIXELS = 6000 * 4000;
+
+    private static final int BLACK_AND_WHITE = 0;
+    private static final int LOOKUP = 1;
+    private static final int CHANNEL_MIX = 2;
+
+    public static void main(String[] args) {
+        Throughput.printEnvironment("Pixel kernel throughput, millions of pixels per second");
+        PixelKernels vector = PixelKernels.getVector();
+        System.out.println("  vector kernels: " + (vector == null ? "unavailable" : vector.getName()));
+
+        run("row of " + ROW_PIXELS + " pixels", ROW_PIXELS, vector);
+        run("image of " + IMAGE_PIXELS + " pixels", IMAGE_PIXELS, vector);
+    }
+
+    // EFFECTS: measures each kernel of the scalar kernels and given vector kernels, if not null, on random
+    //          pixels of given number
+    private static void run(String title, int size, PixelKernels vector) {
+        Random random = new Random(size);
+        int[] pixels = new int[size];
+        for (int i = 0; i < size; i++)
+            pixels[i] = random.nextInt();
+
+        int[] table = new int[256];
+        for (int level = 0; level < table.length; level++)
+            table[level] = Math.max(0, Math.min((int) Math.round((level - 128) * 1.2 + 128 + 10), 255));
+
+        // Sepia
+        int one = PixelKernels.MIX_WEIGHT_ONE;
+        int[] weights = {
+                (int) (0.393 * one), (int) (0.769 * one), (int) (0.189 * one),
+                (int) (0.349 * one), (int) (0.686 * one), (int) (0.168 * one),
+                (int) (0.272 * one), (int) (0.534 * one), (int) (0.131 * one)};
+
+        System.out.println(title);
+        measure("black and white", pixels, table, weights, PixelKernels.getScalar(), vector, BLACK_AND_WHITE);
+        measure("brightness/contrast lookup", pixels, table, weights, PixelKernels.getScalar(), vector, LOOKUP);
+        measure("sepia channel mix", pixels, table, weights, PixelKernels.getScalar(), vector, CHANNEL_MIX);
+    }
+
+    // EFFECTS: measures given kernel of the scalar kernels and of given vector kernels, if not null; each run
+    //          restores the pixels first, as the kernels edit in place
+    private static void measure(String name, int[] pixels, int[] table, int[] weights, PixelKernels scalar,
+                                PixelKernels vector, int kernel) {
+        Throughput.measure(name + ", scalar", pixels.length, createWork(pixels, table, weights, scalar, kernel));
+        if (vector != null)
+            Throughput.measure(name + ", vector", pixels.length, createWork(pixels, table, weights, vector, kernel));
+    }
+
+    // EFFECTS: returns work applying given kernel of given kernels to a copy of given pixels
+    private static Throughput.Work createWork(final int[] pixels, final int[] table, final int[] weights,
+                                              final PixelKernels kernels, final int kernel) {
+        final int[] work = new int[pixels.length];
+        return new Throughput.Work() {
+            @Override
+            public long run() {
+                System.arraycopy(pixels, 0, work, 0, pixels.length);
+                if (kernel == BLACK_AND_WHITE)
+                    kernels.blackAndWhite(work, 0, work.length);
+                else if (kernel == LOOKUP)
+                    kernels.lookup(work, 0, work.length, table, table, table);
+                else
+                    kernels.channelMix(work, 0, work.length, weights);
+                return work[work.length / 2];
+            }
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package photoalbum.benchmark;
+
+import java.util.Arrays;
+
+// Measures the throughput of a piece of work: runs it until the JIT has compiled it, then times a number of runs
+// and reports the median, so that a run slowed down by garbage collection or another process doesn't skew it
+class Throughput {
+    private static final long WARMUP_NANOS = 2000000000L;
+    private static final int RUNS = 15;
+
+    private static long sink;       // results of the work, kept so that the JIT can't discard it
+
+    // Work whose throughput is measured
+    interface Work {
+        // EFFECTS: does one run of the work, returning a value depending on its result
+        long run();
+    }
+
+    // EFFECTS: runs given work for the warmup time, then times RUNS runs of it; prints and returns the median
+    //          throughput in millions of units per second, given the number of units (e.g. pixels) per run
+    static double measure(String name, long unitsPerRun, Work work) {
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < warmupEnd)
+            sink += work.run();
+
+        long[] nanos = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            sink += work.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(nanos);
+        double throughput = unitsPerRun * 1000.0 / nanos[RUNS / 2];
+        System.out.printf("  %-44s %10.1f M/s  (median %.2f ms)%n", name, throughput, nanos[RUNS / 2] / 1e6);
+        return throughput;
+    }
+
+    // EFFECTS: prints header naming the JVM and CPU count, so that results can be compared across machines
+    static void printEnvironment(String title) {
+        System.out.println(title);
+        System.out.println("  " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version")
+                + ", " + System.getProperty("os.arch") + ", " + Runtime.getRuntime().availableProcessors()
+                + " processors");
+    }
+}
@@ -8,6 +8,7 @@ import org.junit.jupiter.api.Test;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -62,4 +63,13 @@ public class AlbumTest {
 		assertEquals(album1, photo1.getAlbum());
 		assertEquals(album1, photo2.getAlbum());
 	}
+
+    @Test
+    public void testFindPhoto() {
+        album1.addPhoto(photo1);
+        album1.addPhoto(photo2);
+        assertEquals(photo1, album1.findPhoto("1"));
+        assertEquals(photo2, album1.findPhoto("2"));
+        assertNull(album1.findPhoto("3"));
+    }
 }
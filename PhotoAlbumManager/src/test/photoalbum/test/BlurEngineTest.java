@@ -0,0 +1,81 @@
+package photoalbum.test;
+
+import photoalbum.utility.BlurEngine;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests BlurEngine against a direct computation of each blurred pixel
+ */
+public class BlurEngineTest {
+
+    // Tall enough for the image to be split into several bands
+    private static final int WIDTH = 53;
+    private static final int HEIGHT = 300;
+
+    @Test
+    public void testBoxBlurSmallRadius() {
+        checkBoxBlur(2);
+    }
+
+    @Test
+    public void testBoxBlurLargeRadius() {
+        checkBoxBlur(40);
+    }
+
+    @Test
+    public void testBoxBlurRadiusLargerThanImage() {
+        checkBoxBlur(BlurEngine.MAX_RADIUS);
+    }
+
+    @Test
+    public void testBoxBlurRadiusZeroMakesOpaque() {
+        int[] pixels = createRandomPixels();
+        int[] blurred = BlurEngine.boxBlur(pixels, WIDTH, HEIGHT, 0);
+        for (int i = 0; i < pixels.length; i++)
+            assertEquals(0xFF000000 | pixels[i], blurred[i]);
+    }
+
+    @Test
+    public void testGaussianBlurKeepsUniformImage() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0xFF336699);
+        int[] blurred = BlurEngine.gaussianBlur(pixels, WIDTH, HEIGHT, 5.0);
+        assertNotSame(pixels, blurred);
+        assertArrayEquals(pixels, blurred);
+    }
+
+    private void checkBoxBlur(int radius) {
+        int[] pixels = createRandomPixels();
+        int[] blurred = BlurEngine.boxBlur(pixels, WIDTH, HEIGHT, radius);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int redSum = 0, greenSum = 0, blueSum = 0, count = 0;
+                for (int j = Math.max(y - radius, 0); j <= Math.min(y + radius, HEIGHT - 1); j++) {
+                    for (int i = Math.max(x - radius, 0); i <= Math.min(x + radius, WIDTH - 1); i++) {
+                        int rgb = pixels[j * WIDTH + i];
+                        redSum += (rgb >> 16) & 0xFF;
+                        greenSum += (rgb >> 8) & 0xFF;
+                        blueSum += rgb & 0xFF;
+                        count++;
+                    }
+                }
+                int expected = 0xFF000000 | (redSum / count) << 16 | (greenSum / count) << 8 | blueSum / count;
+                assertEquals(expected, blurred[y * WIDTH + x]);
+            }
+        }
+    }
+
+    private int[] createRandomPixels() {
+        Random random = new Random(WIDTH);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = random.nextInt() & 0xFFFFFF;
+        return pixels;
+    }
+}
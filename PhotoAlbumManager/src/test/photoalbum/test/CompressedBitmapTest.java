@@ -0,0 +1,127 @@
+package photoalbum.test;
+
+import photoalbum.utility.CompressedBitmap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests CompressedBitmap against BitSet, for sparse and dense containers
+ */
+public class CompressedBitmapTest {
+
+    private static final int CONTAINER_SIZE = 65536;
+
+    private Random random;
+
+    @BeforeEach
+    public void setUp() {
+        random = new Random(17);
+    }
+
+    @Test
+    public void testAddRemoveContains() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        bitmap.add(5);
+        bitmap.add(5);
+        bitmap.add(3 * CONTAINER_SIZE + 1);
+        assertEquals(2, bitmap.cardinality());
+        assertTrue(bitmap.contains(5));
+        assertTrue(bitmap.contains(3 * CONTAINER_SIZE + 1));
+        assertFalse(bitmap.contains(6));
+        assertFalse(bitmap.contains(-1));
+
+        bitmap.remove(5);
+        bitmap.remove(7);
+        assertFalse(bitmap.contains(5));
+        assertArrayEquals(new int[] {3 * CONTAINER_SIZE + 1}, bitmap.toArray());
+
+        bitmap.remove(3 * CONTAINER_SIZE + 1);
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    public void testContainerBecomesDenseAndSparseAgain() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        BitSet expected = new BitSet();
+        for (int i = 0; i < 10000; i++) {
+            bitmap.add(2 * i);
+            expected.set(2 * i);
+        }
+        checkSame(expected, bitmap);
+
+        for (int i = 0; i < 9000; i++) {
+            bitmap.remove(2 * i);
+            expected.clear(2 * i);
+        }
+        checkSame(expected, bitmap);
+    }
+
+    @Test
+    public void testOperationsMatchBitSet() {
+        // Densities chosen so that pairs of array containers, bitmap containers and one of each are combined
+        double[] densities = {0.001, 0.05, 0.5};
+
+        for (double density1 : densities) {
+            for (double density2 : densities) {
+                BitSet set1 = new BitSet();
+                BitSet set2 = new BitSet();
+                CompressedBitmap bitmap1 = createRandomBitmap(density1, set1);
+                CompressedBitmap bitmap2 = createRandomBitmap(density2, set2);
+
+                BitSet and = (BitSet) set1.clone();
+                and.and(set2);
+                checkSame(and, bitmap1.and(bitmap2));
+
+                BitSet or = (BitSet) set1.clone();
+                or.or(set2);
+                checkSame(or, bitmap1.or(bitmap2));
+
+                BitSet andNot = (BitSet) set1.clone();
+                andNot.andNot(set2);
+                checkSame(andNot, bitmap1.andNot(bitmap2));
+
+                // Operands are left unchanged
+                checkSame(set1, bitmap1);
+                checkSame(set2, bitmap2);
+            }
+        }
+    }
+
+    @Test
+    public void testOperationsWithEmptyBitmap() {
+        BitSet set = new BitSet();
+        CompressedBitmap bitmap = createRandomBitmap(0.05, set);
+        CompressedBitmap empty = new CompressedBitmap();
+
+        assertTrue(bitmap.and(empty).isEmpty());
+        assertTrue(empty.and(bitmap).isEmpty());
+        checkSame(set, bitmap.or(empty));
+        checkSame(set, empty.or(bitmap));
+        checkSame(set, bitmap.andNot(empty));
+        assertTrue(empty.andNot(bitmap).isEmpty());
+        assertTrue(bitmap.andNot(bitmap).isEmpty());
+    }
+
+    // EFFECTS: returns bitmap holding each value in the first four containers with given probability;
+    //          adds the same values to given set
+    private CompressedBitmap createRandomBitmap(double density, BitSet set) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value = 0; value < 4 * CONTAINER_SIZE; value++) {
+            if (random.nextDouble() < density) {
+                bitmap.add(value);
+                set.set(value);
+            }
+        }
+        return bitmap;
+    }
+
+    private void checkSame(BitSet expected, CompressedBitmap bitmap) {
+        assertEquals(expected.cardinality(), bitmap.cardinality());
+        assertArrayEquals(expected.stream().toArray(), bitmap.toArray());
+    }
+}
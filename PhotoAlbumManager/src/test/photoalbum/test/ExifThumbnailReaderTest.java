@@ -0,0 +1,173 @@
+package photoalbum.test;
+
+import photoalbum.utility.ExifThumbnailReader;
+import photoalbum.utility.Thumbnail;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.JpegImageData;
+import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests ExifThumbnailReader on generated jpg files with and without an EXIF preview, and with broken EXIF segments
+ */
+public class ExifThumbnailReaderTest {
+
+    private static final int FULL_WIDTH = 600;
+    private static final int FULL_HEIGHT = 400;
+    private static final int RED = 0xFF0000;
+    private static final int GREEN = 0x00FF00;
+    private static final int APP1_MARKER = 0xE1;
+    private static final int EXIF_HEADER_LENGTH = "Exif\0\0".length();
+
+    private Path directory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("exif");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        directory.toFile().delete();
+    }
+
+    @Test
+    public void testReadsThumbnailFromPreview() throws Exception {
+        File file = write("preview.jpg", createJpgWithPreview(160, 107));
+
+        Thumbnail thumbnail = ExifThumbnailReader.readThumbnail(file);
+
+        assertNotNull(thumbnail);
+        BufferedImage image = (BufferedImage) thumbnail.getThumbnailImage();
+        assertTrue(image.getWidth() <= Thumbnail.MAX_WIDTH);
+        assertTrue(image.getHeight() <= Thumbnail.MAX_HEIGHT);
+        // Taken from the green preview rather than the red image
+        assertTrue(isGreen(image.getRGB(image.getWidth() / 2, image.getHeight() / 2)));
+    }
+
+    @Test
+    public void testNoPreviewWithoutExif() throws Exception {
+        File file = write("plain.jpg", encodeJpg(createImage(FULL_WIDTH, FULL_HEIGHT, RED)));
+        assertNull(ExifThumbnailReader.readThumbnail(file));
+    }
+
+    @Test
+    public void testPreviewSmallerThanThumbnailIgnored() throws Exception {
+        File file = write("small.jpg", createJpgWithPreview(Thumbnail.MAX_WIDTH / 2, Thumbnail.MAX_HEIGHT / 2));
+        assertNull(ExifThumbnailReader.readThumbnail(file));
+    }
+
+    @Test
+    public void testPreviewWithOtherAspectRatioIgnored() throws Exception {
+        File file = write("padded.jpg", createJpgWithPreview(160, 160));
+        assertNull(ExifThumbnailReader.readThumbnail(file));
+    }
+
+    @Test
+    public void testTruncatedExifSegmentIgnored() throws Exception {
+        byte[] contents = createJpgWithPreview(160, 107);
+        int app1 = findApp1(contents);
+
+        File file = write("truncated.jpg", Arrays.copyOf(contents, app1 + 4 + EXIF_HEADER_LENGTH + 20));
+
+        assertNull(ExifThumbnailReader.readThumbnail(file));
+    }
+
+    @Test
+    public void testCorruptExifSegmentIgnored() throws Exception {
+        byte[] contents = createJpgWithPreview(160, 107);
+        int app1 = findApp1(contents);
+        int length = ((contents[app1 + 2] & 0xFF) << 8) | (contents[app1 + 3] & 0xFF);
+
+        // Overwrite the TIFF structure after the EXIF header, leaving the segment's length as it is
+        Arrays.fill(contents, app1 + 4 + EXIF_HEADER_LENGTH, app1 + 2 + length, (byte) 0xFF);
+        File file = write("corrupt.jpg", contents);
+
+        assertNull(ExifThumbnailReader.readThumbnail(file));
+    }
+
+    @Test
+    public void testNonJpgFileIgnored() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(createImage(FULL_WIDTH, FULL_HEIGHT, RED), "png", out);
+        File file = write("image.png", out.toByteArray());
+
+        assertNull(ExifThumbnailReader.readThumbnail(file));
+    }
+
+    // EFFECTS: returns contents of a red FULL_WIDTH x FULL_HEIGHT jpg whose EXIF metadata holds a green preview of
+    //          given size
+    private byte[] createJpgWithPreview(int width, int height)
+            throws IOException, ImageReadException, ImageWriteException {
+        byte[] preview = encodeJpg(createImage(width, height, GREEN));
+
+        TiffOutputSet exif = new TiffOutputSet();
+        exif.getOrCreateRootDirectory();
+        TiffOutputDirectory thumbnailDirectory =
+                new TiffOutputDirectory(TiffDirectoryConstants.DIRECTORY_TYPE_DIR_1, exif.byteOrder);
+        thumbnailDirectory.setJpegImageData(new JpegImageData(0, preview.length, preview));
+        exif.addDirectory(thumbnailDirectory);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ExifRewriter().updateExifMetadataLossless(encodeJpg(createImage(FULL_WIDTH, FULL_HEIGHT, RED)), out,
+                exif);
+        return out.toByteArray();
+    }
+
+    // EFFECTS: returns image of given size filled with given colour
+    private BufferedImage createImage(int width, int height, int rgb) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++)
+                image.setRGB(x, y, rgb);
+        }
+        return image;
+    }
+
+    // EFFECTS: returns given image encoded as a jpg
+    private byte[] encodeJpg(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    // EFFECTS: writes given contents to a file of given name in the temporary directory, and returns the file
+    private File write(String name, byte[] contents) throws IOException {
+        return Files.write(directory.resolve(name), contents).toFile();
+    }
+
+    // EFFECTS: returns position of the APP1 (EXIF) marker segment in given jpg contents
+    private int findApp1(byte[] contents) {
+        int position = 2;
+        while ((contents[position + 1] & 0xFF) != APP1_MARKER)
+            position += 2 + (((contents[position + 2] & 0xFF) << 8) | (contents[position + 3] & 0xFF));
+        return position;
+    }
+
+    // EFFECTS: returns true if given pixel is mostly green
+    private boolean isGreen(int rgb) {
+        return ((rgb >> 8) & 0xFF) > 200 && ((rgb >> 16) & 0xFF) < 50 && (rgb & 0xFF) < 50;
+    }
+}
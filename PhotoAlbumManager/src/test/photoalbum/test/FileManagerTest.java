@@ -0,0 +1,193 @@
+package photoalbum.test;
+
+import photoalbum.photo.Album;
+import photoalbum.photo.Photo;
+import photoalbum.photo.PhotoManager;
+import photoalbum.photo.TagManager;
+import photoalbum.utility.FileManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests FileManager loading a library of copies of the photos in photos/
+ */
+public class FileManagerTest {
+
+    private Path library;
+    private PhotoManager photoManager;
+    private TagManager tagManager;
+    private FileManager fileManager;
+    private List<String> added;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        library = Files.createTempDirectory("library");
+        photoManager = new PhotoManager();
+        tagManager = new TagManager();
+        fileManager = new FileManager(photoManager, tagManager, library.toString());
+        added = new ArrayList<String>();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        deleteRecursively(library.toFile());
+    }
+
+    @Test
+    public void testParallelLoadMergesInAlbumAndFileNameOrder() throws IOException {
+        copyPhoto("odds", "5.jpg", "b");
+        copyPhoto("odds", "1.jpg", "b");
+        copyPhoto("evens", "4.jpg", "a");
+        copyPhoto("evens", "2.jpg", "a");
+        addRecordingAlbums("a", "b");
+
+        fileManager.loadLibraryInParallel();
+
+        assertEquals(Arrays.asList("a/2", "a/4", "b/1", "b/5"), added);
+        assertEquals(2, photoManager.getAlbums().size());
+        assertEquals("The number 2", photoManager.findAlbum("a").findPhoto("2").getDescription());
+        assertFalse(photoManager.findAlbum("a").findPhoto("2").isDirty());
+    }
+
+    @Test
+    public void testParallelLoadSkipsFileWhoseDecodingThrows() throws IOException {
+        copyPhoto("odds", "1.jpg", "a");
+        writeBrokenImage("a", "2-broken.jpg");
+        copyPhoto("odds", "3.jpg", "a");
+        copyPhoto("evens", "4.jpg", "b");
+        addRecordingAlbums("a", "b");
+
+        fileManager.loadLibraryInParallel();
+
+        assertEquals(Arrays.asList("a/1", "a/3", "b/4"), added);
+        assertNull(photoManager.findAlbum("a").findPhoto("2-broken"));
+    }
+
+    @Test
+    public void testSaveMetadataWritesDirtyPhotosOnly() throws IOException {
+        copyPhoto("odds", "1.jpg", "a");
+        copyPhoto("odds", "3.jpg", "a");
+        byte[] clean = Files.readAllBytes(library.resolve("a").resolve("3.jpg"));
+        fileManager.loadLibraryInParallel();
+        Photo edited = photoManager.findAlbum("a").findPhoto("1");
+        edited.setDescription("The number one");
+
+        assertTrue(fileManager.saveMetadata().isEmpty());
+
+        assertFalse(edited.isDirty());
+        assertArrayEquals(clean, Files.readAllBytes(library.resolve("a").resolve("3.jpg")));
+        PhotoManager reloaded = new PhotoManager();
+        new FileManager(reloaded, new TagManager(), library.toString()).loadLibraryInParallel();
+        assertEquals("The number one", reloaded.findAlbum("a").findPhoto("1").getDescription());
+        assertEquals("The number 3", reloaded.findAlbum("a").findPhoto("3").getDescription());
+    }
+
+    @Test
+    public void testSaveMetadataReportsFileThatCannotBeWritten() throws IOException {
+        copyPhoto("odds", "1.jpg", "a");
+        copyPhoto("odds", "3.jpg", "a");
+        fileManager.loadLibraryInParallel();
+        Photo failed = photoManager.findAlbum("a").findPhoto("1");
+        Photo saved = photoManager.findAlbum("a").findPhoto("3");
+        failed.setDescription("Not saved");
+        saved.setDescription("Saved");
+        Files.write(library.resolve("a").resolve("1.jpg"), new byte[] {1, 2, 3});
+
+        List<String> failures = fileManager.saveMetadata();
+
+        assertEquals(Arrays.asList("a" + File.separator + "1.jpg"), failures);
+        assertTrue(failed.isDirty());
+        assertFalse(saved.isDirty());
+    }
+
+    @Test
+    public void testDescribeSingleFailure() {
+        assertEquals("Couldn't write metadata for 1 item:\na/1.jpg",
+                FileManager.describeFailures(Arrays.asList("a/1.jpg")));
+    }
+
+    @Test
+    public void testDescribeFailuresListsAtMostTen() {
+        List<String> failures = new ArrayList<String>();
+        for (int i = 1; i <= 12; i++)
+            failures.add("a/" + i + ".jpg");
+
+        String message = FileManager.describeFailures(failures);
+
+        assertTrue(message.startsWith("Couldn't write metadata for 12 items:\na/1.jpg\n"));
+        assertTrue(message.contains("\na/10.jpg\n"));
+        assertFalse(message.contains("a/11.jpg"));
+        assertTrue(message.endsWith("\n... and 2 more"));
+    }
+
+    @Test
+    public void testImportCopiesFileToAlbumInLibrary() throws IOException {
+        Files.createDirectories(library.resolve("imported"));
+        Album album = new Album("imported");
+        photoManager.addAlbum(album);
+
+        fileManager.loadFromFilesToAlbum(new File[] {Paths.get("photos", "odds", "1.jpg").toFile()}, album);
+
+        assertTrue(Files.exists(library.resolve("imported").resolve("1.jpg")));
+        assertFalse(Files.exists(Paths.get("photos", "imported")));
+        assertNotNull(album.findPhoto("1"));
+    }
+
+    // MODIFIES: this
+    // EFFECTS:  adds albums with given names to the photo manager, recording photos as they are added to them;
+    //           the file manager loads photos into these albums rather than creating its own
+    private void addRecordingAlbums(String... names) {
+        for (final String name : names) {
+            photoManager.addAlbum(new Album(name) {
+                @Override
+                public void addPhoto(Photo photo) {
+                    added.add(name + "/" + photo.getName());
+                    super.addPhoto(photo);
+                }
+            });
+        }
+    }
+
+    // EFFECTS: copies given file in given album of photos/ to given album directory of the library
+    private void copyPhoto(String fromAlbum, String fileName, String toAlbum) throws IOException {
+        Path albumDir = Files.createDirectories(library.resolve(toAlbum));
+        Files.copy(Paths.get("photos", fromAlbum, fileName), albumDir.resolve(fileName));
+    }
+
+    // EFFECTS: writes bmp file, with given name, whose header holds an out-of-range pixel data offset that makes
+    //          the image reader throw NegativeArraySizeException
+    private void writeBrokenImage(String album, String fileName) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "bmp", out);
+        byte[] contents = out.toByteArray();
+        contents[13] = (byte) 0xE9;
+
+        Path albumDir = Files.createDirectories(library.resolve(album));
+        Files.write(albumDir.resolve(fileName), contents);
+    }
+
+    // EFFECTS: deletes given file or directory and everything in it
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children)
+                deleteRecursively(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,86 @@
+package photoalbum.test;
+
+import photoalbum.utility.ImageCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests ImageCache eviction and statistics
+ */
+public class ImageCacheTest {
+
+    // Each 10x10 TYPE_INT_RGB image holds 400 bytes of pixel data
+    private static final int IMAGE_BYTES = 400;
+
+    private ImageCache cache;
+    private File file1, file2, file3;
+    private int loads;
+
+    private ImageCache.ImageLoader loader = new ImageCache.ImageLoader() {
+        @Override
+        public BufferedImage load(File file) {
+            loads++;
+            return new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        }
+    };
+
+    @BeforeEach
+    public void setUp() {
+        cache = new ImageCache(2 * IMAGE_BYTES);
+        file1 = new File("1.jpg");
+        file2 = new File("2.jpg");
+        file3 = new File("3.jpg");
+        loads = 0;
+    }
+
+    @Test
+    public void testSizeOf() {
+        assertEquals(IMAGE_BYTES, ImageCache.sizeOf(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB)));
+    }
+
+    @Test
+    public void testMissThenHit() {
+        BufferedImage image = cache.get(file1, loader);
+        assertTrue(image == cache.get(file1, loader));
+        assertEquals(1, loads);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(IMAGE_BYTES, cache.getSize());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        cache.get(file1, loader);
+        cache.get(file2, loader);
+        cache.get(file1, loader);
+        cache.get(file3, loader);
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2 * IMAGE_BYTES, cache.getSize());
+        assertNotNull(cache.getIfPresent(file1));
+        assertNull(cache.getIfPresent(file2));
+        assertNotNull(cache.getIfPresent(file3));
+    }
+
+    @Test
+    public void testReloadAfterEviction() {
+        cache.get(file1, loader);
+        cache.setBudget(0);
+        assertEquals(0, cache.getSize());
+        assertNotNull(cache.get(file1, loader));
+        assertEquals(2, loads);
+        assertNull(cache.getIfPresent(file1));
+    }
+
+    @Test
+    public void testRemove() {
+        cache.get(file1, loader);
+        cache.remove(file1);
+        assertNull(cache.getIfPresent(file1));
+        assertEquals(0, cache.getSize());
+    }
+}
@@ -0,0 +1,130 @@
+package photoalbum.test;
+
+import photoalbum.photo.Photo;
+import photoalbum.utility.ThumbnailCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests decoding of photo files: the source subsampling chosen for an image size, the size of the decoded image
+ * and files no image reader can read
+ */
+public class ImageDecodeTest {
+
+    private Photo photo;
+    private Path directory;
+    private ThumbnailCache sharedThumbnailCache;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        photo = new Photo("decoded");
+        directory = Files.createTempDirectory("decode");
+        sharedThumbnailCache = ThumbnailCache.getSharedCache();
+        ThumbnailCache.setSharedCache(new ThumbnailCache(directory.resolve("thumbnails").toFile()));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ThumbnailCache.setSharedCache(sharedThumbnailCache);
+        deleteRecursively(directory.toFile());
+    }
+
+    @Test
+    public void testNoSubsamplingUpToTwiceDisplaySize() {
+        assertEquals(1, Photo.getSourceSubsampling(300, 200));
+        assertEquals(1, Photo.getSourceSubsampling(Photo.MAX_WIDTH, Photo.MAX_HEIGHT));
+        assertEquals(1, Photo.getSourceSubsampling(2 * Photo.MAX_WIDTH - 1, 2 * Photo.MAX_HEIGHT - 1));
+    }
+
+    @Test
+    public void testSubsamplingByWholeFactorOfDisplaySize() {
+        assertEquals(2, Photo.getSourceSubsampling(2 * Photo.MAX_WIDTH, 2 * Photo.MAX_HEIGHT));
+        assertEquals(2, Photo.getSourceSubsampling(3 * Photo.MAX_WIDTH - 1, 3 * Photo.MAX_HEIGHT - 1));
+        assertEquals(10, Photo.getSourceSubsampling(6000, 4000));
+        assertEquals(10, Photo.getSourceSubsampling(6000, 2400));
+        assertEquals(10, Photo.getSourceSubsampling(6000, 100));
+        assertEquals(10, Photo.getSourceSubsampling(100, 4000));
+    }
+
+    @Test
+    public void testSubsampledImageFitsDisplaySize() throws IOException {
+        int[][] sizes = {{2 * Photo.MAX_WIDTH + 37, 3 * Photo.MAX_HEIGHT + 11}, {5 * Photo.MAX_WIDTH, 20},
+                {30, 7 * Photo.MAX_HEIGHT + 3}, {4 * Photo.MAX_WIDTH + 1, 4 * Photo.MAX_HEIGHT + 1}};
+
+        for (int[] size : sizes) {
+            File file = writeImage(size[0], size[1]);
+            assertTrue(photo.loadPhoto(file));
+            BufferedImage image = photo.getImage();
+
+            assertTrue(image.getWidth() <= Photo.MAX_WIDTH);
+            assertTrue(image.getHeight() <= Photo.MAX_HEIGHT);
+            assertTrue(image.getWidth() == Photo.MAX_WIDTH || image.getHeight() == Photo.MAX_HEIGHT);
+        }
+    }
+
+    @Test
+    public void testSubsampledImageKeepsContent() throws IOException {
+        File file = writeImage(4 * Photo.MAX_WIDTH, 4 * Photo.MAX_HEIGHT);
+        assertTrue(photo.loadPhoto(file));
+        BufferedImage image = photo.getImage();
+
+        assertEquals(Photo.MAX_WIDTH, image.getWidth());
+        assertEquals(Photo.MAX_HEIGHT, image.getHeight());
+        assertEquals(0xFF0000, image.getRGB(10, Photo.MAX_HEIGHT / 2) & 0xFFFFFF);
+        assertEquals(0x0000FF, image.getRGB(Photo.MAX_WIDTH - 10, Photo.MAX_HEIGHT / 2) & 0xFFFFFF);
+    }
+
+    @Test
+    public void testSmallImageDecodedAtFullSize() throws IOException {
+        File file = writeImage(Photo.MAX_WIDTH / 2, Photo.MAX_HEIGHT / 2);
+        assertTrue(photo.loadPhoto(file));
+        assertEquals(Photo.MAX_WIDTH / 2, photo.getImage().getWidth());
+        assertEquals(Photo.MAX_HEIGHT / 2, photo.getImage().getHeight());
+    }
+
+    @Test
+    public void testFileWithoutImageReaderNotLoaded() throws IOException {
+        File file = directory.resolve("notes.jpg").toFile();
+        byte[] contents = "not an image".getBytes(StandardCharsets.US_ASCII);
+        Files.write(file.toPath(), contents);
+
+        assertFalse(photo.loadPhoto(file));
+        assertFalse(photo.loadPhoto(file, contents));
+        assertFalse(photo.loadPhotoLazily(file));
+        assertNull(photo.getImage());
+    }
+
+    // EFFECTS: writes png file holding an image of given size, red on its left half and blue on its right half
+    private File writeImage(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++)
+                image.setRGB(x, y, x < width / 2 ? 0xFF0000 : 0x0000FF);
+        }
+
+        File file = directory.resolve("image-" + width + "x" + height + ".png").toFile();
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+
+    // EFFECTS: deletes given file or directory and everything in it
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children)
+                deleteRecursively(child);
+        }
+        file.delete();
+    }
+}
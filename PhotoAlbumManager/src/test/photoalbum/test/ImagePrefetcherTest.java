@@ -0,0 +1,103 @@
+package photoalbum.test;
+
+import photoalbum.photo.ImagePrefetcher;
+import photoalbum.photo.Photo;
+import photoalbum.utility.ImageCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests ImagePrefetcher ordering and cancellation, and that it loads images without rendering their edits
+ */
+public class ImagePrefetcherTest {
+
+    private static final int PHOTO_COUNT = 10;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private List<Photo> photos;
+    private ImagePrefetcher prefetcher;
+
+    @BeforeEach
+    public void setUp() {
+        photos = new ArrayList<Photo>();
+        for (int i = 0; i < PHOTO_COUNT; i++) {
+            Photo photo = new Photo("photo" + i);
+            photo.setImage(new BufferedImage(30, 20, BufferedImage.TYPE_INT_RGB));
+            photos.add(photo);
+        }
+        prefetcher = new ImagePrefetcher(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        prefetcher.shutdown();
+    }
+
+    @Test
+    public void testNeighboursPrefetchedNearestFirst() throws InterruptedException {
+        // The prefetcher thread waits on the first photo it prefetches while this thread holds its lock
+        synchronized (photos.get(5)) {
+            prefetcher.prefetchAround(photos, 4);
+            waitForPendingCount(3);
+            assertEquals(Arrays.asList(photos.get(3), photos.get(6), photos.get(2)), prefetcher.getPending());
+        }
+        waitForPendingCount(0);
+    }
+
+    @Test
+    public void testNeighboursAtEndsOfList() throws InterruptedException {
+        synchronized (photos.get(1)) {
+            prefetcher.prefetchAround(photos, 0);
+            waitForPendingCount(1);
+            assertEquals(Arrays.asList(photos.get(2)), prefetcher.getPending());
+        }
+        waitForPendingCount(0);
+    }
+
+    @Test
+    public void testJumpCancelsStaleRequests() throws InterruptedException {
+        synchronized (photos.get(1)) {
+            prefetcher.prefetchAround(photos, 0);
+            waitForPendingCount(1);
+
+            prefetcher.prefetchAround(photos, PHOTO_COUNT - 1);
+            assertEquals(Arrays.asList(photos.get(PHOTO_COUNT - 2), photos.get(PHOTO_COUNT - 3)),
+                    prefetcher.getPending());
+        }
+        waitForPendingCount(0);
+    }
+
+    @Test
+    public void testPrefetchLoadsUneditedImageOnly() throws InterruptedException {
+        File file = new File("photos" + File.separator + "evens" + File.separator + "2.jpg");
+        ImageCache.getSharedCache().remove(file);
+        Photo photo = new Photo("2");
+        assertTrue(photo.loadPhotoLazily(file));
+        photo.blur();
+        photos.set(1, photo);
+
+        prefetcher.prefetchAround(photos, 0);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (ImageCache.getSharedCache().getIfPresent(file) == null && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+
+        assertNotNull(ImageCache.getSharedCache().getIfPresent(file));
+        assertTrue(photo.hasUnrenderedEdits());
+    }
+
+    private void waitForPendingCount(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (prefetcher.getPending().size() != count && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(count, prefetcher.getPending().size());
+    }
+}
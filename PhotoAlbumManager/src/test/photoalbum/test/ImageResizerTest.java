@@ -0,0 +1,74 @@
+package photoalbum.test;
+
+import photoalbum.utility.ImageResizer;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests ImageResizer sizes, colours and that results never share pixels with the source image
+ */
+public class ImageResizerTest {
+
+    @Test
+    public void testSameSizeReturnsCopy() {
+        BufferedImage image = createFilledImage(40, 30, 0x336699);
+        BufferedImage resized = ImageResizer.resize(image, 40, 30);
+
+        assertNotSame(image, resized);
+        assertEquals(0x336699, resized.getRGB(5, 5) & 0xFFFFFF);
+
+        // Editing the source in place mustn't change the result
+        image.setRGB(5, 5, 0xFFFFFF);
+        assertEquals(0x336699, resized.getRGB(5, 5) & 0xFFFFFF);
+    }
+
+    @Test
+    public void testResizeToRequestedSize() {
+        BufferedImage image = createFilledImage(601, 397, 0x804020);
+
+        BufferedImage reduced = ImageResizer.resize(image, 100, 66);
+        assertEquals(100, reduced.getWidth());
+        assertEquals(66, reduced.getHeight());
+        assertEquals(BufferedImage.TYPE_INT_RGB, reduced.getType());
+        assertEquals(0x804020, reduced.getRGB(50, 33) & 0xFFFFFF);
+
+        BufferedImage enlarged = ImageResizer.resize(image, 700, 500);
+        assertEquals(700, enlarged.getWidth());
+        assertEquals(500, enlarged.getHeight());
+        assertEquals(0x804020, enlarged.getRGB(350, 250) & 0xFFFFFF);
+    }
+
+    @Test
+    public void testHalvingAveragesBlocks() {
+        BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, 0x000000);
+        image.setRGB(1, 0, 0xFF0000);
+        image.setRGB(0, 1, 0x00FF00);
+        image.setRGB(1, 1, 0x0000FF);
+
+        BufferedImage halved = ImageResizer.resize(image, 1, 1);
+        assertEquals(0x404040, halved.getRGB(0, 0) & 0xFFFFFF);
+    }
+
+    @Test
+    public void testConvertsOtherImageTypes() {
+        BufferedImage image = new BufferedImage(20, 10, BufferedImage.TYPE_3BYTE_BGR);
+        image.setRGB(3, 3, 0x123456);
+
+        BufferedImage resized = ImageResizer.resize(image, 20, 10);
+        assertEquals(BufferedImage.TYPE_INT_RGB, resized.getType());
+        assertEquals(0x123456, resized.getRGB(3, 3) & 0xFFFFFF);
+    }
+
+    private BufferedImage createFilledImage(int width, int height, int rgb) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++)
+                image.setRGB(x, y, rgb);
+        }
+        return image;
+    }
+}
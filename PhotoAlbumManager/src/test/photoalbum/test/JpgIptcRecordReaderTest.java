@@ -0,0 +1,147 @@
+package photoalbum.test;
+
+import photoalbum.utility.JpgIptcRecordReader;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.JpegPhotoshopMetadata;
+import org.apache.commons.imaging.formats.jpeg.iptc.IptcRecord;
+import org.apache.commons.imaging.formats.jpeg.iptc.IptcTypes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that JpgIptcRecordReader reads the same records as commons-imaging from the photos in photos/, from the
+ * files, their contents or just their headers
+ */
+public class JpgIptcRecordReaderTest {
+
+    private static final File PHOTOS_DIRECTORY = new File("photos");
+
+    @Test
+    public void testReadsSameRecordsAsImaging() throws Exception {
+        List<File> files = getPhotoFiles();
+        int filesWithRecords = 0;
+
+        for (File file : files) {
+            List<String> expected = readWithImaging(file);
+            assertEquals(expected, describe(JpgIptcRecordReader.readIptcRecords(file)), file.getPath());
+            assertEquals(expected, describe(JpgIptcRecordReader.readIptcRecords(Files.readAllBytes(file.toPath()))),
+                    file.getPath());
+            if (!expected.isEmpty())
+                filesWithRecords++;
+        }
+
+        assertTrue(filesWithRecords > 0);
+    }
+
+    @Test
+    public void testHeaderEndsAtStartOfScan() throws Exception {
+        for (File file : getPhotoFiles()) {
+            byte[] contents = Files.readAllBytes(file.toPath());
+            byte[] header = JpgIptcRecordReader.readHeader(file);
+
+            assertTrue(header.length < contents.length, file.getPath());
+            assertArrayEquals(Arrays.copyOf(contents, header.length), header, file.getPath());
+            assertEquals(describe(JpgIptcRecordReader.readIptcRecords(file)),
+                    describe(JpgIptcRecordReader.readIptcRecords(header)), file.getPath());
+        }
+    }
+
+    @Test
+    public void testContentsEndingBeforeImageDataRejected() throws Exception {
+        File file = new File(PHOTOS_DIRECTORY, "pics" + File.separator + "photo1.jpg");
+        byte[] header = JpgIptcRecordReader.readHeader(file);
+        final byte[] truncated = Arrays.copyOf(header, header.length / 2);
+
+        assertThrows(IOException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                JpgIptcRecordReader.readIptcRecords(truncated);
+            }
+        });
+    }
+
+    @Test
+    public void testNonJpgContentsRejected() throws IOException {
+        final File file = new File(PHOTOS_DIRECTORY, "junk" + File.separator + "wrongFormat.jpg");
+        final byte[] contents = Files.readAllBytes(file.toPath());
+        assertThrows(ImageReadException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                JpgIptcRecordReader.readIptcRecords(contents);
+            }
+        });
+        assertThrows(ImageReadException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                JpgIptcRecordReader.readHeader(file);
+            }
+        });
+    }
+
+    @Test
+    public void testNonJpgFileRejected() {
+        final File file = new File(PHOTOS_DIRECTORY, "junk" + File.separator + "wrongFormat.jpg");
+        assertThrows(ImageReadException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                JpgIptcRecordReader.readIptcRecords(file);
+            }
+        });
+    }
+
+    // EFFECTS: returns caption, creation date and keyword records read from given file by commons-imaging,
+    //          described as by describe
+    private List<String> readWithImaging(File file) throws ImageReadException, IOException {
+        List<IptcRecord> records = new ArrayList<IptcRecord>();
+        ImageMetadata metadata = Imaging.getMetadata(file);
+
+        if (metadata instanceof JpegImageMetadata) {
+            JpegPhotoshopMetadata photoshop = ((JpegImageMetadata) metadata).getPhotoshop();
+            if (photoshop != null) {
+                for (IptcRecord record : photoshop.photoshopApp13Data.getRecords()) {
+                    if (record.iptcType == IptcTypes.CAPTION_ABSTRACT || record.iptcType == IptcTypes.DATE_CREATED
+                            || record.iptcType == IptcTypes.KEYWORDS)
+                        records.add(record);
+                }
+            }
+        }
+
+        return describe(records);
+    }
+
+    // EFFECTS: returns type and value of each of given records, in order
+    private List<String> describe(List<IptcRecord> records) {
+        List<String> descriptions = new ArrayList<String>();
+        for (IptcRecord record : records)
+            descriptions.add(record.iptcType.getName() + "=" + record.getValue());
+        return descriptions;
+    }
+
+    // EFFECTS: returns the jpg files of all albums in photos/, other than the one holding junk
+    private List<File> getPhotoFiles() {
+        List<File> files = new ArrayList<File>();
+        for (File album : PHOTOS_DIRECTORY.listFiles()) {
+            if (!album.isDirectory() || album.getName().equals("junk"))
+                continue;
+            for (File file : album.listFiles()) {
+                if (file.getName().endsWith(".jpg"))
+                    files.add(file);
+            }
+        }
+
+        assertFalse(files.isEmpty());
+        return files;
+    }
+}
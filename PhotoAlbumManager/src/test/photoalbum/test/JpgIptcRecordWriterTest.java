@@ -0,0 +1,332 @@
+package photoalbum.test;
+
+import photoalbum.utility.JpgIptcRecordReader;
+import photoalbum.utility.JpgIptcRecordWriter;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.formats.jpeg.iptc.IptcBlock;
+import org.apache.commons.imaging.formats.jpeg.iptc.IptcConstants;
+import org.apache.commons.imaging.formats.jpeg.iptc.IptcParser;
+import org.apache.commons.imaging.formats.jpeg.iptc.IptcRecord;
+import org.apache.commons.imaging.formats.jpeg.iptc.IptcTypes;
+import org.apache.commons.imaging.formats.jpeg.iptc.PhotoshopApp13Data;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests JpgIptcRecordWriter on copies of the photos in photos/ and on generated jpg files: records written, reuse
+ * of the padding left in the file, and that the image data and the directory are left intact
+ */
+public class JpgIptcRecordWriterTest {
+
+    private static final int PADDING_RESOURCE_ID = 0x1387;
+    private static final int PADDING_RESERVE = 1024;
+    private static final int PADDING_RESOURCE_OVERHEAD = 12;
+    private static final int SOS_MARKER = 0xDA;
+    private static final int APP13_MARKER = 0xED;
+    private static final int PHOTOSHOP_IDENTIFIER_LENGTH = "Photoshop 3.0\0".length();
+
+    private Path directory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("iptc");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files)
+                Files.delete(file.toPath());
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testInsertsSegmentIntoFileWithout() throws Exception {
+        File file = writeGeneratedJpg();
+        byte[] before = Files.readAllBytes(file.toPath());
+        assertEquals(-1, findMarker(before, APP13_MARKER));
+
+        JpgIptcRecordWriter.writeMetadata(file, "A description", Arrays.asList("one", "two"));
+
+        byte[] after = Files.readAllBytes(file.toPath());
+        assertTrue(findMarker(after, APP13_MARKER) > 0);
+        assertEquals(Arrays.asList("Caption/Abstract=A description", "Keywords=one", "Keywords=two"),
+                readRecords(file));
+        assertEquals(Collections.singletonList(PADDING_RESERVE - PADDING_RESOURCE_OVERHEAD), getPaddingLengths(file));
+        assertImageDataUnchanged(before, after);
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    public void testRewritesLibraryPhotoWithPaddingReserve() throws Exception {
+        File file = copyPhoto("evens", "2.jpg");
+        byte[] before = Files.readAllBytes(file.toPath());
+        assertTrue(getPaddingLengths(file).isEmpty());
+
+        JpgIptcRecordWriter.writeMetadata(file, "The number two", Collections.singletonList("even"));
+
+        byte[] after = Files.readAllBytes(file.toPath());
+        assertTrue(after.length > before.length);
+        assertTrue(readRecords(file).contains("Caption/Abstract=The number two"));
+        assertTrue(readRecords(file).contains("Keywords=even"));
+        assertEquals(Collections.singletonList(PADDING_RESERVE - PADDING_RESOURCE_OVERHEAD), getPaddingLengths(file));
+        assertImageDataUnchanged(before, after);
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    public void testPatchesInPlaceWhenDataFitsInPadding() throws Exception {
+        // A description longer than the photo's makes the first write rewrite the file, leaving the padding reserve
+        String description = repeat("Three ", 50);
+        File file = copyPhoto("odds", "3.jpg");
+        JpgIptcRecordWriter.writeMetadata(file, description, Collections.<String>emptyList());
+        byte[] before = Files.readAllBytes(file.toPath());
+        assertEquals(Collections.singletonList(PADDING_RESERVE - PADDING_RESOURCE_OVERHEAD), getPaddingLengths(file));
+
+        JpgIptcRecordWriter.writeMetadata(file, description + "patched in place", Arrays.asList("odd", "prime"),
+                true);
+
+        byte[] after = Files.readAllBytes(file.toPath());
+        assertEquals(before.length, after.length);
+        assertEquals(Arrays.asList("Caption/Abstract=" + description + "patched in place", "Keywords=odd",
+                "Keywords=prime"), filterCaptionAndKeywords(readRecords(file)));
+
+        List<Integer> paddingAfter = getPaddingLengths(file);
+        assertEquals(1, paddingAfter.size());
+        assertTrue(paddingAfter.get(0) < PADDING_RESERVE - PADDING_RESOURCE_OVERHEAD);
+        assertImageDataUnchanged(before, after);
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    public void testRewritesWhenDataOutgrowsPadding() throws Exception {
+        File file = copyPhoto("odds", "5.jpg");
+        JpgIptcRecordWriter.writeMetadata(file, "Five", Collections.<String>emptyList());
+        byte[] before = Files.readAllBytes(file.toPath());
+
+        String longDescription = repeat("x", 2 * PADDING_RESERVE);
+        JpgIptcRecordWriter.writeMetadata(file, longDescription, Collections.<String>emptyList(), true);
+
+        byte[] after = Files.readAllBytes(file.toPath());
+        assertTrue(after.length > before.length);
+        assertTrue(readRecords(file).contains("Caption/Abstract=" + longDescription));
+        assertEquals(Collections.singletonList(PADDING_RESERVE - PADDING_RESOURCE_OVERHEAD), getPaddingLengths(file));
+        assertImageDataUnchanged(before, after);
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    public void testSlackLargerThanResourceSplitIntoPaddingBlocks() throws Exception {
+        // A segment holding a long caption and a padding resource, each close to the size limit of a resource
+        IptcParser parser = new IptcParser();
+        List<IptcRecord> records = Collections.singletonList(
+                new IptcRecord(IptcTypes.CAPTION_ABSTRACT, repeat("x", 30000)));
+        List<IptcBlock> blocks = Arrays.asList(
+                new IptcBlock(IptcConstants.IMAGE_RESOURCE_BLOCK_IPTC_DATA, new byte[0],
+                        parser.writeIPTCBlock(records)),
+                new IptcBlock(PADDING_RESOURCE_ID, new byte[0], new byte[30000]));
+        File file = writeGeneratedJpg(parser.writePhotoshopApp13Segment(new PhotoshopApp13Data(records, blocks)));
+        byte[] before = Files.readAllBytes(file.toPath());
+
+        JpgIptcRecordWriter.writeMetadata(file, "Short", Collections.singletonList("split"), true);
+
+        byte[] after = Files.readAllBytes(file.toPath());
+        assertEquals(before.length, after.length);
+        assertEquals(Arrays.asList("Caption/Abstract=Short", "Keywords=split"), readRecords(file));
+
+        List<Integer> padding = getPaddingLengths(file);
+        assertEquals(2, padding.size());
+        for (int length : padding)
+            assertTrue(length <= IptcConstants.IPTC_NON_EXTENDED_RECORD_MAXIMUM_SIZE);
+        assertImageDataUnchanged(before, after);
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    public void testNeverWritesOriginalBytesEvenWhenDataFitsInPadding() throws Exception {
+        String description = repeat("Seven ", 50);
+        File file = copyPhoto("odds", "7.jpg");
+        JpgIptcRecordWriter.writeMetadata(file, description, Collections.<String>emptyList());
+        byte[] before = Files.readAllBytes(file.toPath());
+
+        // The channel keeps the replaced file open, so it still reads the old bytes unless they were overwritten;
+        // as they never are, a crash or failure at any point of the write leaves them intact
+        try (FileChannel original = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            JpgIptcRecordWriter.writeMetadata(file, "Seven", Collections.singletonList("odd"));
+
+            ByteBuffer originalBytes = ByteBuffer.allocate(before.length);
+            while (originalBytes.hasRemaining() && original.read(originalBytes) >= 0);
+            assertArrayEquals(before, originalBytes.array());
+        }
+
+        assertTrue(readRecords(file).contains("Caption/Abstract=Seven"));
+        assertImageDataUnchanged(before, Files.readAllBytes(file.toPath()));
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    public void testNonJpgFileRejectedAndUnchanged() throws Exception {
+        final File file = copyPhoto("junk", "wrongFormat.jpg");
+        byte[] before = Files.readAllBytes(file.toPath());
+
+        assertThrows(ImageReadException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                JpgIptcRecordWriter.writeMetadata(file, "Junk", Collections.<String>emptyList());
+            }
+        });
+        assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+        assertNoTemporaryFiles();
+    }
+
+    // EFFECTS: asserts that the bytes from the Start-Of-Scan marker to the end of both files are the same
+    private void assertImageDataUnchanged(byte[] before, byte[] after) {
+        int sosBefore = findMarker(before, SOS_MARKER);
+        int sosAfter = findMarker(after, SOS_MARKER);
+        assertTrue(sosBefore > 0);
+        assertTrue(sosAfter > 0);
+        assertArrayEquals(Arrays.copyOfRange(before, sosBefore, before.length),
+                Arrays.copyOfRange(after, sosAfter, after.length));
+    }
+
+    // EFFECTS: asserts that the directory holds no file left behind by a write, i.e. no temporary file
+    private void assertNoTemporaryFiles() {
+        for (File file : directory.toFile().listFiles())
+            assertFalse(file.getName().endsWith(".tmp"), file.getName());
+    }
+
+    // EFFECTS: returns position of the first marker segment of given type in given jpg contents, stopping at the
+    //          Start-Of-Scan marker; returns -1 if there is none
+    private int findMarker(byte[] contents, int marker) {
+        int position = 2;
+        while (position + 4 <= contents.length && (contents[position] & 0xFF) == 0xFF) {
+            int type = contents[position + 1] & 0xFF;
+            if (type == marker)
+                return position;
+            if (type == SOS_MARKER)
+                return -1;
+            position += 2 + ((contents[position + 2] & 0xFF) << 8 | (contents[position + 3] & 0xFF));
+        }
+        return -1;
+    }
+
+    // EFFECTS: returns data lengths of the padding resource blocks in the Photoshop APP13 segment of given jpg
+    //          file, in order; each block is a signature, id, even-padded Pascal name, length and even-padded data
+    private List<Integer> getPaddingLengths(File file) throws IOException {
+        List<Integer> lengths = new ArrayList<Integer>();
+        byte[] contents = Files.readAllBytes(file.toPath());
+        int segment = findMarker(contents, APP13_MARKER);
+        if (segment < 0)
+            return lengths;
+
+        int end = segment + 2 + readUnsigned(contents, segment + 2, 2);
+        int position = segment + 4 + PHOTOSHOP_IDENTIFIER_LENGTH;
+        while (position < end) {
+            int id = readUnsigned(contents, position + 4, 2);
+            int nameLength = contents[position + 6] & 0xFF;
+            position += 6 + ((nameLength + 2) & ~1);
+            int length = readUnsigned(contents, position, 4);
+            if (id == PADDING_RESOURCE_ID)
+                lengths.add(length);
+            position += 4 + ((length + 1) & ~1);
+        }
+        return lengths;
+    }
+
+    // EFFECTS: returns big-endian unsigned integer of given number of bytes at given position in contents
+    private int readUnsigned(byte[] contents, int position, int bytes) {
+        int value = 0;
+        for (int i = 0; i < bytes; i++)
+            value = value << 8 | (contents[position + i] & 0xFF);
+        return value;
+    }
+
+    // EFFECTS: returns type and value of each record read from given file
+    private List<String> readRecords(File file) throws Exception {
+        List<String> records = new ArrayList<String>();
+        for (IptcRecord record : JpgIptcRecordReader.readIptcRecords(file))
+            records.add(record.iptcType.getName() + "=" + record.getValue());
+        return records;
+    }
+
+    // EFFECTS: returns the caption and keyword records among given records
+    private List<String> filterCaptionAndKeywords(List<String> records) {
+        List<String> result = new ArrayList<String>();
+        for (String record : records) {
+            if (record.startsWith(IptcTypes.CAPTION_ABSTRACT.getName() + "=")
+                    || record.startsWith(IptcTypes.KEYWORDS.getName() + "="))
+                result.add(record);
+        }
+        return result;
+    }
+
+    // EFFECTS: returns given text repeated given number of times
+    private String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++)
+            builder.append(text);
+        return builder.toString();
+    }
+
+    // EFFECTS: returns copy, in the test directory, of given file in given album of photos/
+    private File copyPhoto(String album, String fileName) throws IOException {
+        Path copy = directory.resolve(fileName);
+        Files.copy(Paths.get("photos", album, fileName), copy);
+        return copy.toFile();
+    }
+
+    // EFFECTS: returns jpg file, in the test directory, written by ImageIO, with a Photoshop APP13 segment of given
+    //          contents inserted after its Start-Of-Image marker
+    private File writeGeneratedJpg(byte[] segmentContents) throws IOException {
+        File file = writeGeneratedJpg();
+        byte[] contents = Files.readAllBytes(file.toPath());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(contents, 0, 2);
+        out.write(0xFF);
+        out.write(APP13_MARKER);
+        out.write((segmentContents.length + 2) >> 8);
+        out.write(segmentContents.length + 2);
+        out.write(segmentContents);
+        out.write(contents, 2, contents.length - 2);
+        Files.write(file.toPath(), out.toByteArray());
+        return file;
+    }
+
+    // EFFECTS: returns jpg file, in the test directory, written by ImageIO, which holds no APP13 segment
+    private File writeGeneratedJpg() throws IOException {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(24);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++)
+                image.setRGB(x, y, random.nextInt());
+        }
+
+        File file = directory.resolve("generated.jpg").toFile();
+        assertTrue(ImageIO.write(image, "jpg", file));
+        return file;
+    }
+}
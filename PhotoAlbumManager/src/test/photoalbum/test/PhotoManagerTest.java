@@ -6,8 +6,11 @@ import photoalbum.photo.PhotoManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -123,5 +126,85 @@ public class PhotoManagerTest {
 				.findPhotosInDateRange(new Date(600001), new Date(700000)));
 	
 	}
+
+	@Test
+	public void testDateRangeFollowsChangesAfterQuery()  {
+		aPhotoManager.addAlbum(album1);
+		photo1.setDateCreated(new Date(100000));
+		photo2.setDateCreated(new Date(200000));
+		assertEquals(1, aPhotoManager.findPhotosInDateRange(new Date(150000), new Date(250000)).size());
+
+		photo1.setDateCreated(new Date(160000));
+		photo4.setDateCreated(new Date(170000));
+		album1.addPhoto(photo4);
+
+		Set<Photo> expected = new HashSet<Photo>();
+		expected.add(photo1);
+		expected.add(photo2);
+		expected.add(photo4);
+		assertEquals(expected, aPhotoManager
+				.findPhotosInDateRange(new Date(150000), new Date(250000)));
+	}
+
+	@Test
+	public void testDateRangeFollowsDatesMovedOutOfRangeOrCleared()  {
+		aPhotoManager.addAlbum(album1);
+		aPhotoManager.addAlbum(album2);
+		photo1.setDateCreated(new Date(200000));
+		photo2.setDateCreated(new Date(200000));
+		photo3.setDateCreated(new Date(200000));
+		assertEquals(3, aPhotoManager.findPhotosInDateRange(new Date(150000), new Date(250000)).size());
+
+		photo1.setDateCreated(new Date(900000));
+		photo2.setDateCreated(null);
+
+		Set<Photo> expected = new HashSet<Photo>();
+		expected.add(photo3);
+		assertEquals(expected, aPhotoManager
+				.findPhotosInDateRange(new Date(150000), new Date(250000)));
+		expected.add(photo1);
+		assertEquals(expected, aPhotoManager
+				.findPhotosInDateRange(new Date(0), new Date(Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void testDateRangeMatchesScanOfPhotosAfterManyChanges()  {
+		Random random = new Random(42);
+		List<Photo> photos = new ArrayList<Photo>();
+		aPhotoManager.addAlbum(album1);
+		aPhotoManager.addAlbum(album2);
+
+		for (int i = 0; i < 500; i++) {
+			if (photos.isEmpty() || random.nextInt(3) == 0) {
+				Photo photo = new Photo("p" + i);
+				photo.setDateCreated(new Date(random.nextInt(100) * 1000L));
+				(random.nextBoolean() ? album1 : album2).addPhoto(photo);
+				photos.add(photo);
+			} else {
+				Photo photo = photos.get(random.nextInt(photos.size()));
+				photo.setDateCreated(random.nextInt(10) == 0 ? null : new Date(random.nextInt(100) * 1000L));
+			}
+
+			Date start = new Date(random.nextInt(100) * 1000L);
+			Date end = new Date(start.getTime() + random.nextInt(30) * 1000L);
+			Set<Photo> expected = new HashSet<Photo>();
+			for (Photo photo : photos) {
+				Date date = photo.getDateCreated();
+				if (date != null && !date.before(start) && !date.after(end))
+					expected.add(photo);
+			}
+			assertEquals(expected, aPhotoManager.findPhotosInDateRange(start, end));
+		}
+	}
+
+	@Test
+	public void testPhotosWithoutDateNotInDateRange()  {
+		aPhotoManager.addAlbum(album1);
+		photo1.setDateCreated(new Date(100000));
+
+		Set<Photo> expected = new HashSet<Photo>();
+		expected.add(photo1);
+		assertEquals(expected, aPhotoManager
+				.findPhotosInDateRange(new Date(0), new Date(Long.MAX_VALUE)));
+	}
 }
-	
@@ -1,32 +1,85 @@
 package photoalbum.test;
 
+import photoalbum.photo.Edit;
 import photoalbum.photo.Photo;
+import photoalbum.photo.RenderMonitor;
+import photoalbum.utility.JpgIptcRecordReader;
+import photoalbum.utility.Thumbnail;
+import photoalbum.utility.ThumbnailCache;
+import org.apache.commons.imaging.ImageReadException;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Basic tests for photo that do not involve tags, image loading or display.
  */
 public class PhotoTest {
+
+    // Image types tested against the per-pixel edit algorithms
+    private static final int[] IMAGE_TYPES = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_BYTE_GRAY};
+
+    // Monitor letting rendering run to completion
+    private static final RenderMonitor NOT_CANCELLED = new RenderMonitor() {
+        @Override
+        public void progress(double fraction) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
 	
 	private Photo photo;
 	private Date photo1AddedDate;
+	private ThumbnailCache sharedThumbnailCache;
+	private File thumbnailDirectory;
 
 	@BeforeEach
-	public void setUp() {
+	public void setUp() throws IOException {
 		photo = new Photo("1");
 		photo1AddedDate = new Date();
 		photo.setDateCreated(photo1AddedDate);
 		photo.setDescription("description");
+
+		// Keep thumbnails of the photos loaded out of the working directory
+		sharedThumbnailCache = ThumbnailCache.getSharedCache();
+		thumbnailDirectory = Files.createTempDirectory("thumbnails").toFile();
+		ThumbnailCache.setSharedCache(new ThumbnailCache(thumbnailDirectory));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		ThumbnailCache.setSharedCache(sharedThumbnailCache);
+		File[] entries = thumbnailDirectory.listFiles();
+		if (entries != null) {
+			for (File entry : entries)
+				entry.delete();
+		}
+		thumbnailDirectory.delete();
 	}
 	
 	@Test
@@ -44,6 +97,18 @@ public class PhotoTest {
 		assertEquals("description", photo.getDescription());
 	}
 
+    @Test
+    public void testDescriptionChangeMarksDirty() {
+        assertTrue(photo.isDirty());
+        photo.markClean();
+        photo.setDescription("description");
+        assertFalse(photo.isDirty());
+        photo.setDescription("new description");
+        assertTrue(photo.isDirty());
+        photo.markClean();
+        assertFalse(photo.isDirty());
+    }
+
     @Test
     public void testLoadNoFile() {
         assertFalse(photo.loadPhoto(new File("./data/NoFile.jpg")));
@@ -54,6 +119,53 @@ public class PhotoTest {
         assertFalse(photo.loadPhoto(new File("./data/Text.txt")));
     }
 
+    @Test
+    public void testLoadLazilyNoFile() {
+        assertFalse(photo.loadPhotoLazily(new File("./data/NoFile.jpg")));
+    }
+
+    @Test
+    public void testLoadLazilyNonImageFile() throws IOException {
+        File textFile = File.createTempFile("text", ".txt");
+        textFile.deleteOnExit();
+        Files.write(textFile.toPath(), "text".getBytes(StandardCharsets.US_ASCII));
+        assertFalse(photo.loadPhotoLazily(textFile));
+    }
+
+    @Test
+    public void testLoadLazilyTooBigWiderThanTall() throws IOException {
+        assertTrue(photo.loadPhotoLazily(writeTempImage(3 * Photo.MAX_WIDTH, Photo.MAX_HEIGHT + 50)));
+        Image img = photo.getImage();
+        assertEquals(Photo.MAX_WIDTH, img.getWidth(null));
+        assertTrue(img.getHeight(null) <= Photo.MAX_HEIGHT);
+    }
+
+    @Test
+    public void testLoadLazilyFromHeader() throws IOException, ImageReadException {
+        File file = new File("photos" + File.separator + "pics" + File.separator + "photo1.jpg");
+        byte[] header = JpgIptcRecordReader.readHeader(file);
+
+        assertFalse(photo.loadPhotoLazily(file, Arrays.copyOf(header, 20)));
+        assertTrue(photo.loadPhotoLazily(file, header));
+        Image img = photo.getImage();
+        assertEquals(Photo.MAX_HEIGHT, img.getHeight(null));
+        assertTrue(img.getWidth(null) <= Photo.MAX_WIDTH);
+    }
+
+    @Test
+    public void testLoadFromContents() throws IOException {
+        File file = writeTempImage(3 * Photo.MAX_WIDTH, Photo.MAX_HEIGHT + 50);
+        byte[] contents = Files.readAllBytes(file.toPath());
+
+        assertFalse(photo.loadPhoto(file, Arrays.copyOf(contents, 20)));
+        assertTrue(photo.loadPhoto(file, contents));
+        Image img = photo.getImage();
+        assertEquals(Photo.MAX_WIDTH, img.getWidth(null));
+        assertTrue(img.getHeight(null) <= Photo.MAX_HEIGHT);
+        assertNotNull(photo.peekThumbnailImage());
+        assertFalse(photo.hasUnrenderedEdits());
+    }
+
     @Test
     public void testLoadTooBigWiderThanTall() {
         assertTrue(photo.loadPhoto(new File("./data/TooBigWiderThanTall.png")));
@@ -116,10 +228,416 @@ public class PhotoTest {
         checkSamePixels(original, blur);
     }
 
-    private void checkSamePixels(Photo p1, Photo p2) {
-        BufferedImage img1 = p1.getImage();
-        BufferedImage img2 = p2.getImage();
+    @Test
+    public void testToBlackAndWhiteMatchesPerPixelAlgorithm() {
+        for (int type : IMAGE_TYPES) {
+            BufferedImage expected = createRandomImage(type);
+            BufferedImage actual = copyOf(expected);
+            for (int x = 0; x < expected.getWidth(); x++) {
+                for (int y = 0; y < expected.getHeight(); y++) {
+                    Color c = new Color(expected.getRGB(x, y));
+                    int average = (c.getRed() + c.getBlue() + c.getGreen()) / 3;
+                    expected.setRGB(x, y, new Color(average, average, average).getRGB());
+                }
+            }
+
+            photo.setImage(actual);
+            photo.toBlackAndWhite();
+            checkSamePixels(expected, photo.getImage());
+        }
+    }
+
+    @Test
+    public void testFlipHorizontalMatchesPerPixelAlgorithm() {
+        for (int type : IMAGE_TYPES) {
+            BufferedImage expected = createRandomImage(type);
+            BufferedImage actual = copyOf(expected);
+            int width = expected.getWidth();
+            for (int x = 0; x < width / 2; x++) {
+                for (int y = 0; y < expected.getHeight(); y++) {
+                    int tempColor = expected.getRGB(width - 1 - x, y);
+                    expected.setRGB(width - 1 - x, y, expected.getRGB(x, y));
+                    expected.setRGB(x, y, tempColor);
+                }
+            }
+
+            photo.setImage(actual);
+            photo.flipHorizontal();
+            checkSamePixels(expected, photo.getImage());
+        }
+    }
+
+    @Test
+    public void testFlipVerticallyMatchesPerPixelAlgorithm() {
+        for (int type : IMAGE_TYPES) {
+            BufferedImage expected = createRandomImage(type);
+            BufferedImage actual = copyOf(expected);
+            int height = expected.getHeight();
+            for (int x = 0; x < expected.getWidth(); x++) {
+                for (int y = 0; y < height / 2; y++) {
+                    int tempColor = expected.getRGB(x, height - 1 - y);
+                    expected.setRGB(x, height - 1 - y, expected.getRGB(x, y));
+                    expected.setRGB(x, y, tempColor);
+                }
+            }
+
+            photo.setImage(actual);
+            photo.flipVertically();
+            checkSamePixels(expected, photo.getImage());
+        }
+    }
+
+    @Test
+    public void testBlurMatchesPerPixelAlgorithm() {
+        for (int type : IMAGE_TYPES) {
+            BufferedImage original = createRandomImage(type);
+            BufferedImage expected = copyOf(original);
+            for (int x = 0; x < original.getWidth(); x++) {
+                for (int y = 0; y < original.getHeight(); y++) {
+                    int redSum = 0, greenSum = 0, blueSum = 0, count = 0;
+                    for (int dx = -1; dx <= 1; dx++) {
+                        for (int dy = -1; dy <= 1; dy++) {
+                            if (x + dx >= 0 && x + dx < original.getWidth()
+                                    && y + dy >= 0 && y + dy < original.getHeight()) {
+                                Color c = new Color(original.getRGB(x + dx, y + dy));
+                                redSum += c.getRed();
+                                greenSum += c.getGreen();
+                                blueSum += c.getBlue();
+                                count++;
+                            }
+                        }
+                    }
+                    expected.setRGB(x, y, new Color(redSum / count, greenSum / count, blueSum / count).getRGB());
+                }
+            }
+
+            photo.setImage(copyOf(original));
+            photo.blur();
+            checkSamePixels(expected, photo.getImage());
+        }
+    }
+
+    @Test
+    public void testRenderingLeavesEarlierImagesUnchanged() {
+        for (int type : IMAGE_TYPES) {
+            BufferedImage original = createRandomImage(type);
+            BufferedImage unedited = copyOf(original);
+            photo.setImage(unedited);
+
+            photo.flipHorizontal();
+            BufferedImage flipped = photo.getImage();
+            BufferedImage flippedCopy = copyOf(flipped);
+            photo.toBlackAndWhite();
+            BufferedImage blackAndWhite = photo.getImage();
+            photo.blur();
+            BufferedImage blurred = photo.renderEdits(NOT_CANCELLED);
+
+            assertNotSame(flipped, blackAndWhite);
+            assertNotSame(blackAndWhite, blurred);
+            checkSamePixels(original, unedited);
+            checkSamePixels(flippedCopy, flipped);
+
+            photo.undo();
+            photo.undo();
+            checkSamePixels(flippedCopy, photo.getImage());
+        }
+    }
+
+    @Test
+    public void testEditsFusedIntoOnePassMatchEditsRenderedOneByOne() {
+        BufferedImage original = createRandomImage(BufferedImage.TYPE_INT_RGB);
+        Photo oneByOne = new Photo("one by one");
+        oneByOne.setImage(copyOf(original));
+        photo.setImage(copyOf(original));
+
+        oneByOne.flipHorizontal();
+        oneByOne.getImage();
+        oneByOne.toBlackAndWhite();
+        oneByOne.getImage();
+        oneByOne.blur();
+        oneByOne.getImage();
+        oneByOne.flipVertically();
+
+        photo.flipHorizontal();
+        photo.toBlackAndWhite();
+        photo.blur();
+        photo.flipVertically();
+
+        checkSamePixels(oneByOne, photo);
+    }
+
+    @Test
+    public void testUndoRedo() {
+        BufferedImage original = createRandomImage(BufferedImage.TYPE_INT_RGB);
+        Photo flipped = new Photo("flipped");
+        flipped.setImage(copyOf(original));
+        flipped.flipHorizontal();
+        photo.setImage(copyOf(original));
+        assertFalse(photo.canUndo());
 
+        photo.flipHorizontal();
+        photo.toBlackAndWhite();
+        photo.getImage();
+        photo.undo();
+        assertTrue(photo.canRedo());
+        assertEquals(1, photo.getEdits().size());
+        checkSamePixels(flipped, photo);
+
+        photo.undo();
+        assertFalse(photo.canUndo());
+        checkSamePixels(original, photo.getImage());
+
+        photo.redo();
+        checkSamePixels(flipped, photo);
+        photo.blur();
+        assertFalse(photo.canRedo());
+    }
+
+    @Test
+    public void testUndoRedoEditsRenderedOneByOne() {
+        BufferedImage original = createRandomImage(BufferedImage.TYPE_INT_RGB);
+        Photo blackAndWhite = new Photo("b & w");
+        blackAndWhite.setImage(copyOf(original));
+        blackAndWhite.toBlackAndWhite();
+        photo.setImage(copyOf(original));
+
+        photo.toBlackAndWhite();
+        photo.getImage();
+        photo.blur();
+        BufferedImage blurred = copyOf(photo.getImage());
+
+        photo.undo();
+        checkSamePixels(blackAndWhite, photo);
+        photo.undo();
+        checkSamePixels(original, photo.getImage());
+
+        photo.redo();
+        photo.redo();
+        checkSamePixels(blurred, photo.getImage());
+    }
+
+    @Test
+    public void testNeutralColourEditsKeepImage() {
+        BufferedImage original = createRandomImage(BufferedImage.TYPE_INT_ARGB);
+        photo.setImage(copyOf(original));
+        photo.applyEdit(Edit.brightnessContrast(0, 1.0));
+        photo.applyEdit(Edit.channelMix(new double[][] {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}}));
+        checkSamePixels(original, photo.getImage());
+    }
+
+    @Test
+    public void testCombinedBrightnessContrastMatchesEditsRenderedOneByOne() {
+        BufferedImage original = createRandomImage(BufferedImage.TYPE_INT_RGB);
+        Photo oneByOne = new Photo("one by one");
+        oneByOne.setImage(copyOf(original));
+        photo.setImage(copyOf(original));
+
+        oneByOne.applyEdit(Edit.brightnessContrast(40, 1.5));
+        oneByOne.getImage();
+        oneByOne.applyEdit(Edit.brightnessContrast(-20, 0.8));
+
+        photo.applyEdit(Edit.brightnessContrast(40, 1.5));
+        photo.applyEdit(Edit.brightnessContrast(-20, 0.8));
+
+        checkSamePixels(oneByOne, photo);
+    }
+
+    @Test
+    public void testChannelMix() {
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, 0x10C080);
+        photo.setImage(image);
+        photo.applyEdit(Edit.channelMix(new double[][] {{0, 0, 1}, {0.5, 0.5, 0}, {2, 0, 0}}));
+        assertEquals(0xFF806820, photo.getImage().getRGB(0, 0));
+    }
+
+    @Test
+    public void testRenderEditsMatchesGetImage() {
+        BufferedImage original = createRandomImage(BufferedImage.TYPE_INT_RGB);
+        Photo rendered = new Photo("rendered");
+        rendered.setImage(copyOf(original));
+        rendered.toBlackAndWhite();
+        rendered.blur();
+        photo.setImage(copyOf(original));
+        photo.toBlackAndWhite();
+        photo.blur();
+
+        final double[] lastProgress = {0};
+        BufferedImage image = rendered.renderEdits(new RenderMonitor() {
+            @Override
+            public void progress(double fraction) {
+                assertTrue(fraction >= lastProgress[0]);
+                lastProgress[0] = fraction;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+
+        assertEquals(1.0, lastProgress[0]);
+        assertFalse(rendered.hasUnrenderedEdits());
+        assertFalse(rendered.isThumbnailStale());
+        assertTrue(image == rendered.getImage());
+        checkSamePixels(photo.getImage(), image);
+    }
+
+    @Test
+    public void testRenderEditsPublishesNewImageAndThumbnail() {
+        photo.setImage(createRandomImage(BufferedImage.TYPE_INT_RGB));
+        BufferedImage unedited = photo.getImage();
+        Image thumbnail = photo.getThumbnailImage();
+
+        photo.flipHorizontal();
+        assertTrue(photo.hasUnrenderedEdits());
+        assertTrue(photo.isThumbnailStale());
+        assertTrue(thumbnail == photo.peekThumbnailImage());
+
+        BufferedImage flipped = photo.renderEdits(NOT_CANCELLED);
+        assertNotSame(unedited, flipped);
+        assertNotSame(thumbnail, photo.peekThumbnailImage());
+
+        // The edit rendered alone is undone from the undo history, and the thumbnail is then rendered again
+        photo.undo();
+        assertFalse(photo.hasUnrenderedEdits());
+        assertTrue(photo.isThumbnailStale());
+        checkSamePixels(unedited, photo.renderEdits(NOT_CANCELLED));
+        assertFalse(photo.isThumbnailStale());
+    }
+
+    @Test
+    public void testCancelledRenderingLeavesEditsUnrendered() {
+        photo.setImage(createRandomImage(BufferedImage.TYPE_INT_RGB));
+        photo.blur();
+
+        assertNull(photo.renderEdits(new RenderMonitor() {
+            @Override
+            public void progress(double fraction) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        }));
+        assertTrue(photo.hasUnrenderedEdits());
+        assertTrue(photo.isThumbnailStale());
+        assertNotNull(photo.getImage());
+    }
+
+    @Test
+    public void testThumbnailLoadedWithoutHoldingPhotoLock() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ThumbnailCache.setSharedCache(new ThumbnailCache(thumbnailDirectory) {
+            @Override
+            public Thumbnail getThumbnail(File photoFile) {
+                loading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        });
+        assertTrue(photo.loadPhotoLazily(writeTempImage(3 * Photo.MAX_WIDTH, Photo.MAX_HEIGHT + 50)));
+
+        final Image[] thumbnail = new Image[1];
+        Thread loader = new Thread() {
+            @Override
+            public void run() {
+                thumbnail[0] = photo.getThumbnailImage();
+            }
+        };
+        loader.start();
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        // The photo can be used while its thumbnail is loaded
+        Thread user = new Thread() {
+            @Override
+            public void run() {
+                photo.hasUnrenderedEdits();
+            }
+        };
+        user.start();
+        user.join(5000);
+        assertFalse(user.isAlive());
+
+        release.countDown();
+        loader.join(5000);
+        assertNotNull(thumbnail[0]);
+        assertEquals(Thumbnail.MAX_WIDTH, thumbnail[0].getWidth(null));
+        assertSame(thumbnail[0], photo.peekThumbnailImage());
+    }
+
+    @Test
+    public void testRenderFullResolution() throws IOException {
+        File file = writeTempImage(3 * Photo.MAX_WIDTH, Photo.MAX_HEIGHT + 50);
+        BufferedImage original = ImageIO.read(file);
+        assertTrue(photo.loadPhoto(file));
+        photo.flipVertically();
+
+        BufferedImage fullImage = photo.renderFullResolution();
+        assertEquals(3 * Photo.MAX_WIDTH, fullImage.getWidth());
+        assertEquals(Photo.MAX_HEIGHT + 50, fullImage.getHeight());
+        for (int y = 0; y < fullImage.getHeight(); y += 7) {
+            for (int x = 0; x < fullImage.getWidth(); x += 3)
+                assertEquals(original.getRGB(x, fullImage.getHeight() - 1 - y), fullImage.getRGB(x, y));
+        }
+
+        photo.blur();
+        assertEquals(3 * Photo.MAX_WIDTH, photo.renderFullResolution().getWidth());
+        assertEquals(Photo.MAX_WIDTH, photo.getImage().getWidth());
+    }
+
+    @Test
+    public void testRenderFullResolutionOfImageSetDirectly() {
+        BufferedImage image = createRandomImage(BufferedImage.TYPE_INT_RGB);
+        photo.setImage(copyOf(image));
+        photo.flipHorizontal();
+
+        BufferedImage fullImage = photo.renderFullResolution();
+        assertNotSame(photo.getImage(), fullImage);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++)
+                assertEquals(image.getRGB(image.getWidth() - 1 - x, y), fullImage.getRGB(x, y));
+        }
+    }
+
+    // Odd sizes exercise the middle row and column of the flips
+    private BufferedImage createRandomImage(int type) {
+        BufferedImage image = new BufferedImage(37, 23, type);
+        Random random = new Random(type);
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    // EFFECTS: returns temporary png file holding a random image of given size
+    private File writeTempImage(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(width);
+        for (int y = 0; y < height; y++)
+            image.setRGB(random.nextInt(width), y, random.nextInt());
+
+        File file = File.createTempFile("image", ".png");
+        file.deleteOnExit();
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+
+    private BufferedImage copyOf(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        copy.setData(image.getData());
+        return copy;
+    }
+
+    private void checkSamePixels(BufferedImage img1, BufferedImage img2) {
         assertEquals(img1.getWidth(), img2.getWidth());
         assertEquals(img1.getHeight(), img2.getHeight());
 
@@ -129,4 +647,8 @@ public class PhotoTest {
             }
         }
     }
+
+    private void checkSamePixels(Photo p1, Photo p2) {
+        checkSamePixels(p1.getImage(), p2.getImage());
+    }
 }
@@ -0,0 +1,106 @@
+package photoalbum.test;
+
+import photoalbum.utility.PixelKernels;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests the scalar pixel kernels, and that the vector kernels, when the JVM supports them, give the same results
+ */
+public class PixelKernelsTest {
+
+    // Run lengths not a multiple of any SIMD width, so that the scalar tail of the vector kernels is exercised
+    private static final int LENGTH = 1027;
+    private static final int FROM = 3;
+    private static final int TO = LENGTH - 5;
+
+    @Test
+    public void testScalarBlackAndWhite() {
+        int[] pixels = {0x00102030, 0x80FFFFFF, 0xFF010000};
+        PixelKernels.getScalar().blackAndWhite(pixels, 0, pixels.length);
+
+        assertArrayEquals(new int[] {0xFF202020, 0xFFFFFFFF, 0xFF000000}, pixels);
+    }
+
+    @Test
+    public void testScalarLookup() {
+        int[] invert = new int[256];
+        int[] identity = new int[256];
+        for (int level = 0; level < 256; level++) {
+            invert[level] = 255 - level;
+            identity[level] = level;
+        }
+
+        int[] pixels = {0x80102030, 0xFF00FF7F};
+        PixelKernels.getScalar().lookup(pixels, 0, pixels.length, invert, identity, invert);
+
+        assertArrayEquals(new int[] {0x80EF20CF, 0xFFFFFF80}, pixels);
+    }
+
+    @Test
+    public void testScalarChannelMixSwapsAndClamps() {
+        int one = PixelKernels.MIX_WEIGHT_ONE;
+        int[] weights = {0, 0, one, 0, 2 * one, 0, -one, 0, 0};
+
+        int[] pixels = {0x40102030, 0xFF00FF7F};
+        PixelKernels.getScalar().channelMix(pixels, 0, pixels.length, weights);
+
+        assertArrayEquals(new int[] {0x40304000, 0xFF7FFF00}, pixels);
+    }
+
+    @Test
+    public void testDefaultIsScalarOrVector() {
+        PixelKernels kernels = PixelKernels.getDefault();
+        assertTrue(kernels == PixelKernels.getScalar() || kernels == PixelKernels.getVector());
+    }
+
+    @Test
+    public void testVectorKernelsMatchScalar() {
+        assumeTrue(PixelKernels.getVector() != null);
+        PixelKernels scalar = PixelKernels.getScalar();
+        PixelKernels vector = PixelKernels.getVector();
+        Random random = new Random(14);
+
+        int[] pixels = createRandomPixels(random);
+        int[] expected = pixels.clone();
+        scalar.blackAndWhite(expected, FROM, TO);
+        vector.blackAndWhite(pixels, FROM, TO);
+        assertArrayEquals(expected, pixels);
+
+        int[] red = createRandomTable(random);
+        int[] green = createRandomTable(random);
+        int[] blue = createRandomTable(random);
+        pixels = createRandomPixels(random);
+        expected = pixels.clone();
+        scalar.lookup(expected, FROM, TO, red, green, blue);
+        vector.lookup(pixels, FROM, TO, red, green, blue);
+        assertArrayEquals(expected, pixels);
+
+        int[] weights = new int[9];
+        for (int i = 0; i < weights.length; i++)
+            weights[i] = random.nextInt(4 * PixelKernels.MIX_WEIGHT_ONE) - 2 * PixelKernels.MIX_WEIGHT_ONE;
+        pixels = createRandomPixels(random);
+        expected = pixels.clone();
+        scalar.channelMix(expected, FROM, TO, weights);
+        vector.channelMix(pixels, FROM, TO, weights);
+        assertArrayEquals(expected, pixels);
+    }
+
+    private int[] createRandomPixels(Random random) {
+        int[] pixels = new int[LENGTH];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = random.nextInt();
+        return pixels;
+    }
+
+    private int[] createRandomTable(Random random) {
+        int[] table = new int[256];
+        for (int level = 0; level < table.length; level++)
+            table[level] = random.nextInt(256);
+        return table;
+    }
+}
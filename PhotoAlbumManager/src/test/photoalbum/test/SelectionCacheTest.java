@@ -0,0 +1,119 @@
+package photoalbum.test;
+
+import photoalbum.photo.Album;
+import photoalbum.photo.Photo;
+import photoalbum.photo.PhotoManager;
+import photoalbum.photo.PhotoSelection;
+import photoalbum.photo.SelectionCache;
+import photoalbum.photo.Tag;
+import photoalbum.photo.TagManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests SelectionCache reuse and invalidation, and PhotoSelection ordering and deltas
+ */
+public class SelectionCacheTest {
+
+    private PhotoManager photoManager;
+    private TagManager tagManager;
+    private SelectionCache cache;
+    private Album album;
+    private Tag tag;
+    private Photo photo1, photo2, photo3;
+
+    @BeforeEach
+    public void setUp() {
+        photoManager = new PhotoManager();
+        tagManager = new TagManager();
+        cache = new SelectionCache(photoManager, tagManager);
+        album = new Album("Album");
+        tag = tagManager.createTag("tag");
+        photo1 = new Photo("1");
+        photo2 = new Photo("2");
+        photo3 = new Photo("3");
+        photo1.setDateCreated(new Date(300000));
+        photo2.setDateCreated(new Date(100000));
+        photo3.setDateCreated(new Date(200000));
+
+        album.addPhoto(photo1);
+        album.addPhoto(photo2);
+        photoManager.addAlbum(album);
+        photo1.addTag(tag);
+    }
+
+    @Test
+    public void testSelectionOrderedByDate() {
+        album.addPhoto(photo3);
+        assertEquals(Arrays.asList(photo2, photo3, photo1), getAlbumSelection().getPhotos());
+    }
+
+    @Test
+    public void testPhotosWithSameDateAllSelected() {
+        photo3.setDateCreated(new Date(100000));
+        album.addPhoto(photo3);
+        assertEquals(Arrays.asList(photo2, photo3, photo1), getAlbumSelection().getPhotos());
+    }
+
+    @Test
+    public void testSelectionReusedUntilPhotosChange() {
+        PhotoSelection selection = getAlbumSelection();
+        assertSame(selection, getAlbumSelection());
+
+        album.addPhoto(photo3);
+        PhotoSelection updated = getAlbumSelection();
+        assertNotSame(selection, updated);
+        assertEquals(Collections.singletonList(photo3), updated.getAddedSince(selection));
+        assertTrue(updated.getRemovedSince(selection).isEmpty());
+    }
+
+    @Test
+    public void testTagChangesInvalidateOnlyTagSelections() {
+        PhotoSelection albumSelection = getAlbumSelection();
+        PhotoSelection tagSelection = getTagSelection();
+        assertEquals(Collections.singletonList(photo1), tagSelection.getPhotos());
+
+        photo1.removeTag(tag);
+        photo2.addTag(tag);
+        assertSame(albumSelection, getAlbumSelection());
+
+        PhotoSelection updated = getTagSelection();
+        assertEquals(Collections.singletonList(photo2), updated.getAddedSince(tagSelection));
+        assertEquals(Collections.singletonList(photo1), updated.getRemovedSince(tagSelection));
+    }
+
+    @Test
+    public void testDateChangeReordersSelection() {
+        PhotoSelection selection = getAlbumSelection();
+        photo2.setDateCreated(new Date(400000));
+        PhotoSelection updated = getAlbumSelection();
+        assertNotSame(selection, updated);
+        assertEquals(Arrays.asList(photo1, photo2), updated.getPhotos());
+        assertTrue(updated.getAddedSince(selection).isEmpty());
+    }
+
+    private PhotoSelection getAlbumSelection() {
+        return cache.getSelection("album", false, new SelectionCache.Query() {
+            @Override
+            public Collection<Photo> findPhotos() {
+                return album.getPhotos();
+            }
+        });
+    }
+
+    private PhotoSelection getTagSelection() {
+        return cache.getSelection("tag", true, new SelectionCache.Query() {
+            @Override
+            public Collection<Photo> findPhotos() {
+                return tag.getPhotos();
+            }
+        });
+    }
+}
@@ -1,10 +1,17 @@
 package photoalbum.test;
 
+import photoalbum.photo.Photo;
 import photoalbum.photo.Tag;
 import photoalbum.photo.TagManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -69,6 +76,36 @@ public class TagManagerTest {
 		assertTrue(aTagManager.renameTag("newBirthday", "birthday"));
 	}
 
+    @Test
+    public void testTaggingMarksPhotoDirty() {
+        Photo photo = new Photo("photo");
+        Tag tag = aTagManager.createTag("birthday");
+        assertFalse(photo.isDirty());
+
+        photo.addTag(tag);
+        assertTrue(photo.isDirty());
+        photo.markClean();
+        photo.addTag(tag);
+        assertFalse(photo.isDirty());
+
+        photo.removeTag(tag);
+        assertTrue(photo.isDirty());
+    }
+
+    @Test
+    public void testRenameTagMarksTaggedPhotosDirty() {
+        Photo tagged = new Photo("tagged");
+        Photo untagged = new Photo("untagged");
+        tagged.addTag(aTagManager.createTag("birthday"));
+        untagged.addTag(aTagManager.createTag("holiday"));
+        tagged.markClean();
+        untagged.markClean();
+
+        assertTrue(aTagManager.renameTag("birthday", "newBirthday"));
+        assertTrue(tagged.isDirty());
+        assertFalse(untagged.isDirty());
+    }
+
     @Test
     public void testRenameTagToDuplicateName() {
         aTagManager.createTag("Some Tag");
@@ -87,4 +124,49 @@ public class TagManagerTest {
         assertFalse(aTagManager.renameTag("old","New"));
 
     }
+
+    @Test
+    public void testFindPhotosWithTags() {
+        Tag a = aTagManager.createTag("a");
+        Tag b = aTagManager.createTag("b");
+        Tag c = aTagManager.createTag("c");
+        Photo photo1 = new Photo("1");
+        Photo photo2 = new Photo("2");
+        Photo photo3 = new Photo("3");
+        photo1.addTag(a);
+        photo1.addTag(b);
+        photo2.addTag(b);
+        photo2.addTag(c);
+        photo3.addTag(c);
+
+        List<Tag> ab = Arrays.asList(a, b);
+        assertEquals(setOf(photo1), aTagManager.findPhotosWithAllTags(ab));
+        assertEquals(setOf(photo1, photo2), aTagManager.findPhotosWithAnyTag(ab));
+        assertEquals(setOf(photo1), aTagManager.findPhotos(Collections.singleton(b), ab,
+                Collections.singleton(c)));
+        assertEquals(setOf(photo3), aTagManager.findPhotos(Collections.singleton(c), Collections.<Tag>emptySet(),
+                Collections.singleton(b)));
+        assertTrue(aTagManager.findPhotosWithAllTags(Collections.<Tag>emptySet()).isEmpty());
+    }
+
+    @Test
+    public void testFindPhotosFollowsTagChanges() {
+        Tag a = aTagManager.createTag("a");
+        Tag b = aTagManager.createTag("b");
+        Photo photo1 = new Photo("1");
+        Photo photo2 = new Photo("2");
+        photo1.addTag(a);
+        photo2.addTag(a);
+        photo2.addTag(b);
+
+        photo2.removeTag(a);
+        assertEquals(setOf(photo1), aTagManager.findPhotosWithAnyTag(Collections.singleton(a)));
+
+        aTagManager.removeTag("b");
+        assertTrue(aTagManager.findPhotosWithAnyTag(Collections.singleton(b)).isEmpty());
+    }
+
+    private static Set<Photo> setOf(Photo... photos) {
+        return new HashSet<Photo>(Arrays.asList(photos));
+    }
 }
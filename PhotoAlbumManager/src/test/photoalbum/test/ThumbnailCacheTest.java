@@ -0,0 +1,187 @@
+package photoalbum.test;
+
+import photoalbum.utility.Thumbnail;
+import photoalbum.utility.ThumbnailCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests ThumbnailCache entries on generated photo files: hits, misses once the file changes, corrupt entries and
+ * pruning to the budget
+ */
+public class ThumbnailCacheTest {
+
+    private Path photos;
+    private File directory;
+    private ThumbnailCache cache;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        photos = Files.createTempDirectory("photos");
+        directory = Files.createTempDirectory("thumbnails").toFile();
+        cache = new ThumbnailCache(directory);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        deleteDirectory(photos.toFile());
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void testMissThenHit() throws IOException {
+        File file = writePhoto("1.png", 0xFF0000);
+        assertNull(cache.getThumbnail(file));
+
+        cache.putThumbnail(file, createThumbnail(file));
+
+        Thumbnail cached = cache.getThumbnail(file);
+        assertNotNull(cached);
+        BufferedImage image = (BufferedImage) cached.getThumbnailImage();
+        assertEquals(Thumbnail.MAX_WIDTH, image.getWidth());
+        assertEquals(0xFF0000, image.getRGB(0, 0) & 0xFFFFFF);
+    }
+
+    @Test
+    public void testMissAfterLastModifiedChanges() throws IOException {
+        File file = writePhoto("1.png", 0xFF0000);
+        cache.putThumbnail(file, createThumbnail(file));
+
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+
+        assertNull(cache.getThumbnail(file));
+    }
+
+    @Test
+    public void testMissAfterSizeChanges() throws IOException {
+        File file = writePhoto("1.png", 0xFF0000);
+        cache.putThumbnail(file, createThumbnail(file));
+        long lastModified = file.lastModified();
+
+        Files.write(file.toPath(), new byte[] {0}, StandardOpenOption.APPEND);
+        assertTrue(file.setLastModified(lastModified));
+
+        assertNull(cache.getThumbnail(file));
+    }
+
+    @Test
+    public void testReplacedFileReplacesEntry() throws IOException {
+        File file = writePhoto("1.png", 0xFF0000);
+        cache.putThumbnail(file, createThumbnail(file));
+        long lastModified = file.lastModified();
+
+        writePhoto("1.png", 0x0000FF);
+        assertTrue(file.setLastModified(lastModified + 2000));
+        assertNull(cache.getThumbnail(file));
+        cache.putThumbnail(file, createThumbnail(file));
+
+        assertEquals(1, listEntries().size());
+        BufferedImage image = (BufferedImage) cache.getThumbnail(file).getThumbnailImage();
+        assertEquals(0x0000FF, image.getRGB(0, 0) & 0xFFFFFF);
+    }
+
+    @Test
+    public void testCorruptEntryIsMiss() throws IOException {
+        File file = writePhoto("1.png", 0xFF0000);
+        cache.putThumbnail(file, createThumbnail(file));
+        List<File> entries = listEntries();
+        assertEquals(1, entries.size());
+
+        Files.write(entries.get(0).toPath(), new byte[] {1, 2, 3});
+
+        assertNull(cache.getThumbnail(file));
+    }
+
+    @Test
+    public void testHitMarksEntryUsed() throws IOException {
+        File file = writePhoto("1.png", 0xFF0000);
+        cache.putThumbnail(file, createThumbnail(file));
+        File entry = listEntries().get(0);
+        long longAgo = System.currentTimeMillis() - 60000;
+        assertTrue(entry.setLastModified(longAgo));
+
+        assertNotNull(cache.getThumbnail(file));
+
+        assertTrue(entry.lastModified() > longAgo);
+    }
+
+    @Test
+    public void testPrunesLeastRecentlyUsedEntriesOverBudget() throws IOException {
+        // The photos are alike, so their entries are the same size
+        File file1 = writePhoto("1.png", 0xFF0000);
+        File file2 = writePhoto("2.png", 0xFF0000);
+        File file3 = writePhoto("3.png", 0xFF0000);
+        cache.putThumbnail(file1, createThumbnail(file1));
+        File entry1 = listEntries().get(0);
+        long entrySize = entry1.length();
+
+        cache = new ThumbnailCache(directory, 2 * entrySize + entrySize / 2);
+        cache.putThumbnail(file2, createThumbnail(file2));
+        assertEquals(2, listEntries().size());
+
+        // Entry 1 was used more recently than entry 2
+        long now = System.currentTimeMillis();
+        for (File entry : listEntries())
+            assertTrue(entry.setLastModified(entry.equals(entry1) ? now - 10000 : now - 20000));
+
+        cache.putThumbnail(file3, createThumbnail(file3));
+
+        assertEquals(2, listEntries().size());
+        assertNotNull(cache.getThumbnail(file1));
+        assertNull(cache.getThumbnail(file2));
+        assertNotNull(cache.getThumbnail(file3));
+    }
+
+    // EFFECTS: writes photo file with given name filled with given colour, and returns it
+    private File writePhoto(String name, int rgb) throws IOException {
+        BufferedImage image = new BufferedImage(3 * Thumbnail.MAX_WIDTH, 2 * Thumbnail.MAX_HEIGHT,
+                BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++)
+                image.setRGB(x, y, rgb);
+        }
+
+        File file = photos.resolve(name).toFile();
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+
+    // EFFECTS: returns thumbnail computed from given photo file
+    private Thumbnail createThumbnail(File file) throws IOException {
+        return new Thumbnail(ImageIO.read(file));
+    }
+
+    // EFFECTS: returns the entry files in the cache directory
+    private List<File> listEntries() {
+        List<File> entries = new ArrayList<File>();
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(".png"))
+                entries.add(file);
+        }
+
+        return entries;
+    }
+
+    // EFFECTS: deletes given directory and the files in it
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,115 @@
+package photoalbum.test;
+
+import photoalbum.photo.Photo;
+import photoalbum.photo.ThumbnailLoader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests ThumbnailLoader loading and cancellation, and Photo.peekThumbnailImage
+ */
+public class ThumbnailLoaderTest {
+
+    private static final int PHOTO_COUNT = 20;
+
+    private List<Photo> photos;
+    private Set<Photo> loaded;
+    private CountDownLatch allLoaded;
+    private ThumbnailLoader loader;
+
+    @BeforeEach
+    public void setUp() {
+        photos = new ArrayList<Photo>();
+        for (int i = 0; i < PHOTO_COUNT; i++) {
+            Photo photo = new Photo("photo" + i);
+            photo.setImage(new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB));
+            photos.add(photo);
+        }
+
+        loaded = Collections.synchronizedSet(new HashSet<Photo>());
+        allLoaded = new CountDownLatch(PHOTO_COUNT);
+        loader = new ThumbnailLoader(2, new ThumbnailLoader.Listener() {
+            @Override
+            public void thumbnailLoaded(Photo photo, Image image) {
+                assertNotNull(image);
+                loaded.add(photo);
+                allLoaded.countDown();
+            }
+        });
+    }
+
+    @AfterEach
+    public void tearDown() {
+        loader.shutdown();
+    }
+
+    @Test
+    public void testPeekDoesNotLoadThumbnail() {
+        assertNull(photos.get(0).peekThumbnailImage());
+        Image image = photos.get(0).getThumbnailImage();
+        assertSame(image, photos.get(0).peekThumbnailImage());
+    }
+
+    @Test
+    public void testRequestedThumbnailsLoaded() throws InterruptedException {
+        loader.requestThumbnails(photos);
+        assertTrue(allLoaded.await(10, TimeUnit.SECONDS));
+        assertEquals(new HashSet<Photo>(photos), loaded);
+        for (Photo photo : photos)
+            assertNotNull(photo.peekThumbnailImage());
+        assertEquals(0, loader.getPendingCount());
+    }
+
+    @Test
+    public void testNewRequestCancelsPendingOnes() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ThumbnailLoader blockingLoader = new ThumbnailLoader(1, new ThumbnailLoader.Listener() {
+            @Override
+            public void thumbnailLoaded(Photo photo, Image image) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                loaded.add(photo);
+            }
+        });
+
+        try {
+            // The only loader thread is held once it has loaded the first photo
+            blockingLoader.requestThumbnails(photos);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            List<Photo> wanted = photos.subList(PHOTO_COUNT - 2, PHOTO_COUNT);
+            blockingLoader.requestThumbnails(wanted);
+            assertEquals(2, blockingLoader.getPendingCount());
+            release.countDown();
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!loaded.containsAll(wanted) && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+
+            Set<Photo> expected = new HashSet<Photo>(wanted);
+            expected.add(photos.get(0));
+            assertEquals(expected, loaded);
+            assertNull(photos.get(1).peekThumbnailImage());
+        } finally {
+            blockingLoader.shutdown();
+        }
+    }
+}
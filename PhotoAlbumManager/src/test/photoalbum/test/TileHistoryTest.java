@@ -0,0 +1,151 @@
+package photoalbum.test;
+
+import photoalbum.utility.TileHistory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests TileHistory undo, redo and memory use
+ */
+public class TileHistoryTest {
+
+    // Image is 3 tiles across and 2 tiles down, the last column and row of tiles being partial
+    private static final int WIDTH = 2 * TileHistory.TILE_SIZE + 10;
+    private static final int HEIGHT = TileHistory.TILE_SIZE + 20;
+    private static final int TILE_BYTES = 4 * TileHistory.TILE_SIZE * TileHistory.TILE_SIZE;
+
+    private TileHistory history;
+    private int[] original;
+
+    @BeforeEach
+    public void setUp() {
+        history = new TileHistory(Long.MAX_VALUE);
+        original = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < original.length; i++)
+            original[i] = i;
+    }
+
+    @Test
+    public void testLocalChangeStoresOneTile() {
+        int[] changed = original.clone();
+        changed[WIDTH + 1] = -1;
+        history.record(original, changed, WIDTH, HEIGHT);
+        assertEquals(TILE_BYTES, history.getSize());
+    }
+
+    @Test
+    public void testPartialTileStoresOnlyItsPixels() {
+        int[] changed = original.clone();
+        changed[changed.length - 1] = -1;
+        history.record(original, changed, WIDTH, HEIGHT);
+        assertEquals(4 * 10 * 20, history.getSize());
+    }
+
+    @Test
+    public void testUndoRedo() {
+        int[] first = original.clone();
+        first[0] = -1;
+        int[] second = first.clone();
+        second[second.length - 1] = -2;
+        history.record(original, first, WIDTH, HEIGHT);
+        history.record(first, second, WIDTH, HEIGHT);
+
+        int[] pixels = second.clone();
+        history.undo(pixels);
+        assertArrayEquals(first, pixels);
+        history.undo(pixels);
+        assertArrayEquals(original, pixels);
+        assertFalse(history.canUndo());
+
+        history.redo(pixels);
+        assertArrayEquals(first, pixels);
+        history.redo(pixels);
+        assertArrayEquals(second, pixels);
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    public void testRecordDiscardsRedo() {
+        int[] changed = original.clone();
+        changed[0] = -1;
+        history.record(original, changed, WIDTH, HEIGHT);
+        history.undo(changed);
+        assertTrue(history.canRedo());
+
+        history.record(original, original, WIDTH, HEIGHT);
+        assertFalse(history.canRedo());
+        assertEquals(0, history.getSize());
+    }
+
+    @Test
+    public void testOldestStepsDroppedOverBudget() {
+        history = new TileHistory(2 * TILE_BYTES);
+        int[] pixels = original;
+        for (int i = 0; i < 3; i++) {
+            int[] changed = pixels.clone();
+            changed[0] = -1 - i;
+            history.record(pixels, changed, WIDTH, HEIGHT);
+            pixels = changed;
+        }
+        assertEquals(2, history.getUndoDepth());
+        assertEquals(2 * TILE_BYTES, history.getSize());
+    }
+
+    @Test
+    public void testSharedBudgetDropsStepsOfLeastRecentlyRecordedHistoryFirst() {
+        TileHistory.Budget budget = new TileHistory.Budget(2 * TILE_BYTES);
+        TileHistory first = new TileHistory(budget);
+        TileHistory second = new TileHistory(budget);
+
+        first.record(original, changeFirstPixel(original, -1), WIDTH, HEIGHT);
+        second.record(original, changeFirstPixel(original, -2), WIDTH, HEIGHT);
+        first.record(original, changeFirstPixel(original, -3), WIDTH, HEIGHT);
+
+        assertEquals(2, first.getUndoDepth());
+        assertEquals(0, second.getUndoDepth());
+        assertEquals(0, second.getSize());
+        assertEquals(2 * TILE_BYTES, budget.getSize());
+    }
+
+    @Test
+    public void testUndoOfDroppedStepLeavesPixels() {
+        TileHistory.Budget budget = new TileHistory.Budget(TILE_BYTES);
+        TileHistory first = new TileHistory(budget);
+        TileHistory second = new TileHistory(budget);
+        int[] changed = changeFirstPixel(original, -1);
+
+        first.record(original, changed, WIDTH, HEIGHT);
+        second.record(original, changeFirstPixel(original, -2), WIDTH, HEIGHT);
+
+        int[] pixels = changed.clone();
+        assertFalse(first.undo(pixels));
+        assertArrayEquals(changed, pixels);
+        assertTrue(second.canUndo());
+    }
+
+    @Test
+    public void testClearReleasesSharedBudget() {
+        TileHistory.Budget budget = new TileHistory.Budget(Long.MAX_VALUE);
+        TileHistory first = new TileHistory(budget);
+        TileHistory second = new TileHistory(budget);
+        int[] changed = changeFirstPixel(original, -1);
+
+        first.record(original, changed, WIDTH, HEIGHT);
+        second.record(original, changed, WIDTH, HEIGHT);
+        first.undo(changed.clone());
+        first.clearRedo();
+        assertEquals(TILE_BYTES, budget.getSize());
+
+        second.clear();
+        assertEquals(0, budget.getSize());
+    }
+
+    // EFFECTS: returns copy of given pixels with the first pixel set to given value
+    private int[] changeFirstPixel(int[] pixels, int value) {
+        int[] changed = pixels.clone();
+        changed[0] = value;
+        return changed;
+    }
+}
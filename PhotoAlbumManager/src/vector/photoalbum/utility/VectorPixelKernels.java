@@ -0,0 +1,87 @@
+package photoalbum.utility;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Pixel kernels processing a SIMD register of pixels at a time with the jdk.incubator.vector API; pixels left
+// over at the end of a run, fewer than a register, are processed by the scalar kernels. Lookups stay scalar:
+// gathering levels from the tables is slower than looking them up one at a time. Only loaded by PixelKernels,
+// and only if the module is present, as this class cannot be linked without it; it is kept in a source root of its
+// own, so that the main sources compile without the module.
+class VectorPixelKernels extends ScalarPixelKernels {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+
+    @Override
+    public int getLanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public void blackAndWhite(int[] pixels, int from, int to) {
+        int i = from;
+        for (int end = from + SPECIES.loopBound(to - from); i < end; i += SPECIES.length()) {
+            IntVector rgb = IntVector.fromArray(SPECIES, pixels, i);
+            IntVector sum = red(rgb).add(green(rgb)).add(blue(rgb));
+            IntVector average = sum.mul(GRAY_MULTIPLIER).lanewise(VectorOperators.LSHR, GRAY_SHIFT);
+            average.lanewise(VectorOperators.LSHL, 16)
+                    .or(average.lanewise(VectorOperators.LSHL, 8))
+                    .or(average)
+                    .or(0xFF000000)
+                    .intoArray(pixels, i);
+        }
+        super.blackAndWhite(pixels, i, to);
+    }
+
+    @Override
+    public void channelMix(int[] pixels, int from, int to, int[] weights) {
+        int rounding = MIX_WEIGHT_ONE / 2;
+
+        int i = from;
+        for (int end = from + SPECIES.loopBound(to - from); i < end; i += SPECIES.length()) {
+            IntVector rgb = IntVector.fromArray(SPECIES, pixels, i);
+            IntVector r = red(rgb);
+            IntVector g = green(rgb);
+            IntVector b = blue(rgb);
+
+            IntVector newRed = mix(r, g, b, weights[0], weights[1], weights[2], rounding);
+            IntVector newGreen = mix(r, g, b, weights[3], weights[4], weights[5], rounding);
+            IntVector newBlue = mix(r, g, b, weights[6], weights[7], weights[8], rounding);
+            rgb.and(0xFF000000)
+                    .or(newRed.lanewise(VectorOperators.LSHL, 16))
+                    .or(newGreen.lanewise(VectorOperators.LSHL, 8))
+                    .or(newBlue)
+                    .intoArray(pixels, i);
+        }
+        super.channelMix(pixels, i, to, weights);
+    }
+
+    // EFFECTS: returns weighted sums of given levels, rounded and clamped to 0..255
+    private static IntVector mix(IntVector r, IntVector g, IntVector b, int rWeight, int gWeight, int bWeight,
+                                 int rounding) {
+        return r.mul(rWeight).add(g.mul(gWeight)).add(b.mul(bWeight)).add(rounding)
+                .lanewise(VectorOperators.ASHR, MIX_WEIGHT_SHIFT)
+                .max(0)
+                .min(255);
+    }
+
+    // EFFECTS: returns red levels of given pixels
+    private static IntVector red(IntVector rgb) {
+        return rgb.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+    }
+
+    // EFFECTS: returns green levels of given pixels
+    private static IntVector green(IntVector rgb) {
+        return rgb.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+    }
+
+    // EFFECTS: returns blue levels of given pixels
+    private static IntVector blue(IntVector rgb) {
+        return rgb.and(0xFF);
+    }
+}